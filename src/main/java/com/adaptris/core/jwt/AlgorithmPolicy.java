@@ -0,0 +1,283 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.WeakKeyException;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+import org.json.JSONArray;
+
+import javax.crypto.SecretKey;
+import javax.management.ObjectName;
+import javax.validation.constraints.NotNull;
+import java.security.Key;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Restricts the algorithms and key sizes that {@link JWTDecoder} will accept, and keeps counters and latency for each
+ * algorithm and issuer.
+ *
+ * <p>
+ * The algorithm in the token header is checked against {@code allowed-algorithm} before any key is loaded or signature
+ * verified, so a token with a disallowed (or unexpectedly expensive) algorithm costs no crypto work; if no algorithms
+ * are listed, any algorithm is allowed. The verification key (the decoder's own, or that of its
+ * {@link JWTVerifierConnection}) is checked against the minimum size for its type when it is loaded; a key that is
+ * resolved per token, such as that of a key directory, is checked each time it is resolved. The statistics can be dumped as JSON through JMX, as
+ * {@code com.adaptris.core.jwt:type=AlgorithmPolicy,id="<unique-id>"} (with a suffix if the unique-id is missing or already
+ * registered).
+ * </p>
+ *
+ * <pre>{@code
+ *    <jwt-decode>
+ *      ...
+ *      <algorithm-policy>
+ *        <allowed-algorithm>HS512</allowed-algorithm>
+ *        <allowed-algorithm>ES256</allowed-algorithm>
+ *        <minimum-rsa-key-size>3072</minimum-rsa-key-size>
+ *      </algorithm-policy>
+ *    </jwt-decode>
+ * }</pre>
+ *
+ * @config jwt-algorithm-policy
+ */
+@XStreamAlias("jwt-algorithm-policy")
+public class AlgorithmPolicy implements AlgorithmPolicyMBean
+{
+  private static final int DEFAULT_MINIMUM_HMAC_KEY_SIZE = 256;
+  private static final int DEFAULT_MINIMUM_RSA_KEY_SIZE = 2048;
+  private static final int DEFAULT_MINIMUM_EC_KEY_SIZE = 256;
+
+  /**
+   * The statistics are kept per algorithm and issuer, up to this many; the rest are counted together.
+   */
+  private static final int MAX_STATS_ENTRIES = 256;
+  private static final String OTHER = "other";
+
+  /**
+   * The algorithms to allow; if empty, all are allowed.
+   */
+  @Getter
+  @Setter
+  @NotNull
+  @XStreamImplicit(itemFieldName = "allowed-algorithm")
+  private List<String> allowedAlgorithms;
+
+  /**
+   * The minimum size, in bits, of a shared (HMAC) key; defaults to 256.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "256")
+  private Integer minimumHmacKeySize;
+
+  /**
+   * The minimum size, in bits, of an RSA key; defaults to 2048.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "2048")
+  private Integer minimumRsaKeySize;
+
+  /**
+   * The minimum size, in bits, of an elliptic curve key; defaults to 256.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "256")
+  private Integer minimumEcKeySize;
+
+  private transient Set<String> allowed;
+  private transient Map<String, AlgorithmStats> stats;
+  private transient ObjectName objectName;
+
+  public AlgorithmPolicy()
+  {
+    setAllowedAlgorithms(new ArrayList<>());
+  }
+
+  public AlgorithmPolicy(String... allowedAlgorithms)
+  {
+    setAllowedAlgorithms(new ArrayList<>(Arrays.asList(allowedAlgorithms)));
+  }
+
+  /**
+   * Register for JMX.
+   */
+  void init(String name)
+  {
+    allowed = allowedAlgorithms();
+    stats = new ConcurrentHashMap<>();
+    ManagedBeans.unregister(objectName);
+    objectName = ManagedBeans.register(this, "AlgorithmPolicy", name);
+  }
+
+  void close()
+  {
+    ManagedBeans.unregister(objectName);
+    objectName = null;
+  }
+
+  /**
+   * Check the algorithm of a token, without verifying it.
+   *
+   * @return the algorithm from the token header.
+   * @throws UnsupportedJwtException if the algorithm is not allowed.
+   */
+  String check(String jwt)
+  {
+    String alg = TokenHeader.decode(jwt).optString(JwsHeader.ALGORITHM, null);
+    if (!isAllowed(alg))
+    {
+      stats(alg, null).reject();
+      throw new UnsupportedJwtException("Algorithm [" + alg + "] is not allowed");
+    }
+    return alg;
+  }
+
+  boolean isAllowed(String alg)
+  {
+    Set<String> s = allowed != null ? allowed : allowedAlgorithms();
+    return s.isEmpty() || alg != null && s.contains(alg);
+  }
+
+  void verified(String alg, String issuer, long nanos)
+  {
+    stats(alg, issuer).verified(nanos);
+  }
+
+  void failed(String alg, long nanos)
+  {
+    stats(alg, null).failed(nanos);
+  }
+
+  /**
+   * Check the size of a verification key; a null key, or one of an unknown type, is not checked.
+   *
+   * @throws WeakKeyException if the key is smaller than the minimum for its type.
+   */
+  void checkKey(Key key)
+  {
+    int size;
+    int minimum;
+    if (key instanceof RSAKey)
+    {
+      size = ((RSAKey)key).getModulus().bitLength();
+      minimum = ObjectUtils.defaultIfNull(minimumRsaKeySize, DEFAULT_MINIMUM_RSA_KEY_SIZE);
+    }
+    else if (key instanceof ECKey)
+    {
+      size = ((ECKey)key).getParams().getCurve().getField().getFieldSize();
+      minimum = ObjectUtils.defaultIfNull(minimumEcKeySize, DEFAULT_MINIMUM_EC_KEY_SIZE);
+    }
+    else if (key instanceof SecretKey)
+    {
+      byte[] encoded = key.getEncoded();
+      size = encoded.length * 8;
+      Arrays.fill(encoded, (byte)0);
+      minimum = ObjectUtils.defaultIfNull(minimumHmacKeySize, DEFAULT_MINIMUM_HMAC_KEY_SIZE);
+    }
+    else
+    {
+      return;
+    }
+    if (size < minimum)
+    {
+      throw new WeakKeyException(key.getAlgorithm() + " key is " + size + " bits, but must be at least " + minimum + " bits");
+    }
+  }
+
+  /**
+   * Wrap a resolver that chooses the verification key per token, so that every key it resolves is checked.
+   */
+  SigningKeyResolver checking(SigningKeyResolver resolver)
+  {
+    return new SigningKeyResolver()
+    {
+      @Override
+      public Key resolveSigningKey(JwsHeader header, Claims claims)
+      {
+        Key key = resolver.resolveSigningKey(header, claims);
+        checkKey(key);
+        return key;
+      }
+
+      @Override
+      public Key resolveSigningKey(JwsHeader header, String plaintext)
+      {
+        Key key = resolver.resolveSigningKey(header, plaintext);
+        checkKey(key);
+        return key;
+      }
+    };
+  }
+
+  private Set<String> allowedAlgorithms()
+  {
+    return allowedAlgorithms != null ? new HashSet<>(allowedAlgorithms) : new HashSet<>();
+  }
+
+  private AlgorithmStats stats(String alg, String issuer)
+  {
+    String key = key(alg, issuer);
+    AlgorithmStats s = stats.get(key);
+    if (s == null)
+    {
+      if (stats.size() >= MAX_STATS_ENTRIES)
+      {
+        return stats.computeIfAbsent(OTHER, k -> new AlgorithmStats(OTHER, null));
+      }
+      s = stats.computeIfAbsent(key, k -> new AlgorithmStats(alg, issuer));
+    }
+    return s;
+  }
+
+  AlgorithmStats find(String alg, String issuer)
+  {
+    return stats.get(key(alg, issuer));
+  }
+
+  private static String key(String alg, String issuer)
+  {
+    return alg + "\u0000" + issuer;
+  }
+
+  @Override
+  public long getRejectedTokens()
+  {
+    return stats == null ? 0 : stats.values().stream().mapToLong(AlgorithmStats::rejected).sum();
+  }
+
+  @Override
+  public String dump()
+  {
+    JSONArray result = new JSONArray();
+    if (stats != null)
+    {
+      stats.values().forEach(s -> result.put(s.toJSON()));
+    }
+    return result.toString();
+  }
+
+  @Override
+  public void reset()
+  {
+    if (stats != null)
+    {
+      stats.clear();
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.adaptris.core.jwt;
+
+/**
+ * Management interface for {@link AlgorithmPolicy}.
+ */
+public interface AlgorithmPolicyMBean
+{
+  /**
+   * The number of tokens rejected by the policy.
+   */
+  long getRejectedTokens();
+
+  /**
+   * The counters and latency for each algorithm and issuer, as a JSON array.
+   */
+  String dump();
+
+  /**
+   * Discard the counters.
+   */
+  void reset();
+}
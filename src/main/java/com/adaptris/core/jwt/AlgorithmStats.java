@@ -0,0 +1,80 @@
+package com.adaptris.core.jwt;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency for the tokens of one algorithm (and issuer), as kept by {@link AlgorithmPolicy}.
+ */
+final class AlgorithmStats
+{
+  private final String alg;
+  private final String issuer;
+  private final LongAdder verified = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  AlgorithmStats(String alg, String issuer)
+  {
+    this.alg = alg;
+    this.issuer = issuer;
+  }
+
+  void verified(long nanos)
+  {
+    verified.increment();
+    time(nanos);
+  }
+
+  void failed(long nanos)
+  {
+    failed.increment();
+    time(nanos);
+  }
+
+  void reject()
+  {
+    rejected.increment();
+  }
+
+  long verified()
+  {
+    return verified.sum();
+  }
+
+  long failed()
+  {
+    return failed.sum();
+  }
+
+  long rejected()
+  {
+    return rejected.sum();
+  }
+
+  private void time(long nanos)
+  {
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  JSONObject toJSON()
+  {
+    long timed = verified.sum() + failed.sum();
+    JSONObject json = new JSONObject();
+    json.put("alg", alg);
+    json.put("issuer", issuer);
+    json.put("verified", verified.sum());
+    json.put("failed", failed.sum());
+    json.put("rejected", rejected.sum());
+    json.put("totalMicros", TimeUnit.NANOSECONDS.toMicros(totalNanos.sum()));
+    json.put("meanMicros", timed > 0 ? TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / timed) : 0);
+    json.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+    return json;
+  }
+}
@@ -0,0 +1,204 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.CoreException;
+import com.adaptris.core.jwt.secrets.InvalidSecretException;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds key material that is loaded according to a {@link KeyLoading} mode, and logs how long it took to load.
+ */
+final class DeferredKey<T>
+{
+  private static final Logger log = LoggerFactory.getLogger(DeferredKey.class);
+
+  private static final int POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  @FunctionalInterface
+  interface Loader<T>
+  {
+    T load() throws Exception;
+  }
+
+  private final String name;
+  private final KeyLoading mode;
+  private final Loader<T> loader;
+  private volatile Future<T> future;
+
+  DeferredKey(String name, KeyLoading mode, Loader<T> loader)
+  {
+    this.name = name;
+    this.mode = mode != null ? mode : KeyLoading.EAGER;
+    this.loader = loader;
+  }
+
+  /**
+   * Call during initialisation.
+   */
+  DeferredKey<T> init() throws CoreException
+  {
+    switch (mode)
+    {
+      case EAGER:
+        get();
+        break;
+      case PARALLEL:
+      case WARM_UP:
+        future = Pool.EXECUTOR.submit(this::timedLoad);
+        break;
+      default:
+        break;
+    }
+    return this;
+  }
+
+  /**
+   * Call when starting; waits for keys being loaded in parallel.
+   */
+  void start() throws CoreException
+  {
+    if (mode == KeyLoading.PARALLEL)
+    {
+      get();
+    }
+  }
+
+  /**
+   * Whether the keys have been loaded by the time {@link #start()} returns, so can be got without waiting.
+   */
+  boolean isLoadedOnStart()
+  {
+    return mode == KeyLoading.EAGER || mode == KeyLoading.PARALLEL;
+  }
+
+  T get() throws CoreException
+  {
+    Future<T> f = future;
+    if (f == null)
+    {
+      synchronized (this)
+      {
+        f = future;
+        if (f == null)
+        {
+          FutureTask<T> task = new FutureTask<>(this::timedLoad);
+          task.run();
+          future = f = task;
+        }
+      }
+    }
+    try
+    {
+      return f.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new CoreException(e);
+    }
+    catch (ExecutionException e)
+    {
+      // allow the next attempt to retry, rather than failing forever.
+      synchronized (this)
+      {
+        if (future == f)
+        {
+          future = null;
+        }
+      }
+      throw new CoreException("Could not load keys for " + name, e.getCause());
+    }
+  }
+
+  /**
+   * Release the loaded keys, destroying them where possible; the JDK's RSA and EC private keys cannot be destroyed, so
+   * they are only dereferenced.
+   */
+  void clear()
+  {
+    Future<T> f;
+    synchronized (this)
+    {
+      f = future;
+      future = null;
+    }
+    if (f != null && f.isDone() && !f.isCancelled())
+    {
+      try
+      {
+        destroy(f.get());
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e)
+      {
+        // nothing was loaded.
+      }
+    }
+  }
+
+  /**
+   * Initialise a secret, if one is configured; this does not load keys unless the secret has to (to benchmark them, for
+   * example).
+   */
+  static void initSecret(SecretConfigurator secret) throws CoreException
+  {
+    if (secret != null)
+    {
+      try
+      {
+        secret.init();
+      }
+      catch (InvalidSecretException e)
+      {
+        throw new CoreException(e);
+      }
+    }
+  }
+
+  static void destroy(Object key)
+  {
+    if (key instanceof Destroyable && !((Destroyable)key).isDestroyed())
+    {
+      try
+      {
+        ((Destroyable)key).destroy();
+      }
+      catch (DestroyFailedException e)
+      {
+        log.trace("{} cannot be destroyed, so is only released", key.getClass().getName());
+      }
+    }
+  }
+
+  private T timedLoad() throws Exception
+  {
+    long start = System.nanoTime();
+    T result = loader.load();
+    log.info("Loaded keys for [{}] in {}ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return result;
+  }
+
+  private static class Pool
+  {
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(POOL_SIZE, r -> {
+      Thread thread = new Thread(r, "JWTKeyLoader-" + COUNT.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
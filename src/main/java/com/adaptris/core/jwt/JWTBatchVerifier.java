@@ -0,0 +1,216 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisConnection;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ConnectedService;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.ServiceImp;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.interlok.config.DataInputParameter;
+import com.adaptris.interlok.config.DataOutputParameter;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * This service verifies a batch of JSON Web Tokens in one message, using a shared {@link JWTVerifierConnection}.
+ *
+ * <p>
+ * The input is a JSON array of tokens (or an object with a {@code tokens} array); the output is a JSON array with one
+ * result per token, in the same order. A valid token has its header and claims in the result, an invalid token (or an
+ * element that is not a string) has the reason it failed verification; one invalid token does not fail the batch. A
+ * batch of more than {@code max-batch-size} tokens is rejected as a whole. Placed behind an HTTP consumer (such as
+ * {@code jetty-message-consumer}) this provides a lightweight verification endpoint, where the overhead of each
+ * message is spread over every token in the batch.
+ * </p>
+ *
+ * <pre>{@code
+ *    <jwt-batch-verify>
+ *      <unique-id>jwt-batch-verify</unique-id>
+ *      <connection class="shared-connection">
+ *        <lookup-name>jwt</lookup-name>
+ *      </connection>
+ *      <tokens class="string-payload-data-input-parameter"/>
+ *      <results class="string-payload-data-output-parameter"/>
+ *    </jwt-batch-verify>
+ * }</pre>
+ *
+ * For example, {@code ["eyJhbGciOiJIUzUxMiJ9...", "not-a-token"]} results in
+ *
+ * <pre>{@code
+ * [
+ *   {"valid": true, "header": {"alg": "HS512"}, "claims": {"sub": "Bob", ...}},
+ *   {"valid": false, "error": "MalformedJwtException: ..."}
+ * ]
+ * }</pre>
+ *
+ * @config jwt-batch-verify
+ */
+@XStreamAlias("jwt-batch-verify")
+@AdapterComponent
+@ComponentProfile(summary = "Verify a batch of JSON Web Tokens", tag = "jwt,verify,batch,json,web,token", since="3.11.1")
+@DisplayOrder(order = { "connection", "tokens", "results", "maxBatchSize" })
+public class JWTBatchVerifier extends ServiceImp implements ConnectedService
+{
+  private static transient Logger log = LoggerFactory.getLogger(JWTBatchVerifier.class);
+
+  private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+  /**
+   * The {@link JWTVerifierConnection} to verify tokens with.
+   */
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private AdaptrisConnection connection;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataInputParameter<String> tokens;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataOutputParameter<String> results;
+
+  /**
+   * The maximum number of tokens in a batch; a larger batch fails as a whole, rather than tying up the service.
+   * Defaults to 1000.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "1000")
+  private Integer maxBatchSize;
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void doService(AdaptrisMessage message) throws ServiceException
+  {
+    try
+    {
+      JWTVerifierConnection verifier = connection.retrieveConnection(JWTVerifierConnection.class);
+      JSONArray batch = batch(tokens.extract(message));
+      if (batch.length() > maxBatchSize())
+      {
+        throw new ServiceException("Batch of " + batch.length() + " tokens exceeds the maximum of " + maxBatchSize());
+      }
+      JSONArray output = new JSONArray();
+      for (int i = 0; i < batch.length(); i++)
+      {
+        output.put(verify(verifier, batch.get(i)));
+      }
+      results.insert(output.toString(), message);
+    }
+    catch (Exception e)
+    {
+      log.error("An error occurred during JWT batch verification", e);
+      throw new ServiceException(e);
+    }
+  }
+
+  private static JSONArray batch(String input)
+  {
+    String json = input.trim();
+    return json.startsWith("{") ? new JSONObject(json).getJSONArray("tokens") : new JSONArray(json);
+  }
+
+  private static JSONObject verify(JWTVerifierConnection verifier, Object token) throws CoreException
+  {
+    JSONObject result = new JSONObject();
+    if (!(token instanceof String))
+    {
+      String type = token == JSONObject.NULL ? "null" : token.getClass().getSimpleName();
+      return result.put("valid", false).put("error", "Not a token: expected a string but found " + type);
+    }
+    try
+    {
+      Jws<Claims> jws = verifier.verify((String)token);
+      result.put("valid", true);
+      result.put("header", new JSONObject(jws.getHeader()));
+      result.put("claims", new JSONObject(jws.getBody()));
+    }
+    catch (RuntimeException e)
+    {
+      // whatever is wrong with one token, the rest of the batch is still verified.
+      result = new JSONObject();
+      result.put("valid", false);
+      result.put("error", e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+    return result;
+  }
+
+  int maxBatchSize()
+  {
+    return ObjectUtils.defaultIfNull(maxBatchSize, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  protected void initService() throws CoreException
+  {
+    LifecycleHelper.init(connection);
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void start() throws CoreException
+  {
+    LifecycleHelper.start(connection);
+    super.start();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void stop()
+  {
+    super.stop();
+    LifecycleHelper.stop(connection);
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  protected void closeService()
+  {
+    LifecycleHelper.close(connection);
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void prepare() throws CoreException
+  {
+    LifecycleHelper.prepare(connection);
+  }
+}
@@ -4,11 +4,20 @@ import com.adaptris.annotation.AdapterComponent;
 import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.annotation.InputFieldHint;
+import com.adaptris.core.AdaptrisConnection;
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ConnectedService;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.ServiceImp;
+import com.adaptris.core.jwt.clock.SystemClock;
+import com.adaptris.core.jwt.clock.TokenClock;
+import com.adaptris.core.jwt.id.SecureRandomIdGenerator;
+import com.adaptris.core.jwt.id.TokenIdGenerator;
 import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.util.KeyValuePair;
 import com.adaptris.util.KeyValuePairSet;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
@@ -16,11 +25,12 @@ import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.util.Date;
-import java.util.UUID;
 
 /**
  * This service provides a way to create a JSON Web Token from the given data.
@@ -31,8 +41,8 @@ import java.util.UUID;
  *      <issuer>ashley</issuer>
  *      <subject>test</subject>
  *      <audience>everyone</audience>
- *      <expiration>2040-12-31 00:00:00.0 UTC</expiration>
- *      <not-before>2020-01-01 00:00:00.0 UTC</not-before>
+ *      <expires-in>5m</expires-in>
+ *      <not-before-skew>-30s</not-before-skew>
  *      <secret class="base64-encoded-secret">
  *        <secret>c64975ba3cf3f9cd58459710b0a42369f34b0759c9967fb5a47eea488e8bea79</secret>
  *      </secret>
@@ -45,15 +55,34 @@ import java.util.UUID;
  *    </jwt-creator>
  * }</pre>
  *
+ * <p>
+ * The expiration and not-before times can either be absolute dates ({@code expiration}, {@code not-before}) or durations
+ * relative to the issue time ({@code expires-in}, {@code not-before-skew}). Relative durations support expressions and
+ * are written as {@code 5m}, {@code -30s}, {@code 1h} or as an ISO-8601 duration ({@code PT5M}); if both forms are
+ * configured, the relative duration takes precedence.
+ * </p>
+ * <p>
+ * Instead of a secret, a {@link JWTVerifierConnection} can be configured as the connection (usually a shared
+ * connection), so that the signing key is loaded once for the whole adapter.
+ * </p>
+ * <p>
+ * The issue time comes from the configured {@code clock} (the system clock by default) and the token identifier from
+ * the {@code id-generator} (a secure random UUID by default); see {@link com.adaptris.core.jwt.clock.CoarseClock} and
+ * {@link com.adaptris.core.jwt.id.TimeOrderedIdGenerator} for cheaper alternatives at high issuance rates.
+ * </p>
+ *
  * @author aanderson
  * @config jwt-create
  */
 @XStreamAlias("jwt-creator")
 @AdapterComponent
 @ComponentProfile(summary = "Create a JSON Web Token", tag = "jwt,create,json,web,token", since="3.11.1")
-@DisplayOrder(order = { "id", "issuer", "subject", "audience", "issuedAt", "expiration", "notBefore", "secret", "customClaims" })
-public class JWTCreator extends ServiceImp
+@DisplayOrder(order = { "id", "issuer", "subject", "audience", "issuedAt", "expiration", "expiresIn", "notBefore", "notBeforeSkew", "secret", "connection", "customClaims", "compress", "keyLoading", "clock", "idGenerator" })
+public class JWTCreator extends ServiceImp implements ConnectedService
 {
+  private static final TokenClock DEFAULT_CLOCK = new SystemClock();
+  private static final TokenIdGenerator DEFAULT_ID_GENERATOR = new SecureRandomIdGenerator();
+
   @Getter
   @Setter
   @Valid
@@ -90,22 +119,43 @@ public class JWTCreator extends ServiceImp
 
   @Getter
   @Setter
-  @NotNull
   @Valid
   private Date expiration;
 
+  /**
+   * The time until the token expires, relative to the issue time; e.g. {@code 5m}.
+   */
+  @Getter
+  @Setter
+  @InputFieldHint(expression = true)
+  private String expiresIn;
+
   @Getter
   @Setter
-  @NotNull
   @Valid
   private Date notBefore;
 
-  @NotNull
+  /**
+   * The offset of the not-before time, relative to the issue time; e.g. {@code -30s}.
+   */
+  @Getter
+  @Setter
+  @InputFieldHint(expression = true)
+  private String notBeforeSkew;
+
   @Valid
   @Getter
   @Setter
   private SecretConfigurator secret;
 
+  /**
+   * A {@link JWTVerifierConnection} to use instead of the secret.
+   */
+  @Valid
+  @Getter
+  @Setter
+  private AdaptrisConnection connection;
+
   @Getter
   @Setter
   @Valid
@@ -113,6 +163,41 @@ public class JWTCreator extends ServiceImp
   @InputFieldHint(expression = true)
   private KeyValuePairSet customClaims;
 
+  /**
+   * Whether to compress the claims ({@code zip=DEF}); defaults to false.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean compress;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "EAGER")
+  private KeyLoading keyLoading;
+
+  /**
+   * The source of the issue time; defaults to the system clock.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig(rare = true)
+  private TokenClock clock;
+
+  /**
+   * How to generate the token identifier when no {@code id} is configured; defaults to a secure random UUID.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig(rare = true)
+  private TokenIdGenerator idGenerator;
+
+  private transient DeferredKey<SigningKey> signingKey;
+
   /**
    * <p>
    * Apply the service to the message.
@@ -126,16 +211,17 @@ public class JWTCreator extends ServiceImp
   {
     try
     {
+      Date issued = issuedAt != null ? issuedAt : clock().now();
       JwtBuilder builder = Jwts.builder()
               .setSubject(message.resolve(subject))
               .setAudience(message.resolve(audience))
-              .setNotBefore(notBefore)
+              .setNotBefore(notBeforeSkew != null ? RelativeTime.offset(issued, message.resolve(notBeforeSkew)) : notBefore)
               .setIssuer(message.resolve(issuer))
-              .setExpiration(expiration)
-              .setIssuedAt(issuedAt != null ? issuedAt : new Date())
-              .setId(id != null ? id : UUID.randomUUID().toString());
+              .setExpiration(expiresIn != null ? RelativeTime.offset(issued, message.resolve(expiresIn)) : expiration)
+              .setIssuedAt(issued)
+              .setId(id != null ? id : idGenerator().next());
 
-      builder = secret.configure(builder);
+      builder = connection != null ? connection.retrieveConnection(JWTVerifierConnection.class).sign(builder) : signingKey.get().sign(builder);
 
       if (customClaims != null)
       {
@@ -145,6 +231,11 @@ public class JWTCreator extends ServiceImp
         }
       }
 
+      if (BooleanUtils.toBooleanDefaultIfNull(compress, false))
+      {
+        builder.compressWith(StreamingCompression.deflate());
+      }
+
       message.setContent(builder.compact(), message.getContentEncoding());
     }
     catch (Exception e)
@@ -158,9 +249,17 @@ public class JWTCreator extends ServiceImp
    * {@inheritDoc}.
    */
   @Override
-  protected void initService()
+  protected void initService() throws CoreException
   {
-    /* unused */
+    StreamingCompression.retain();
+    clock().init();
+    DeferredKey.initSecret(secret);
+    if (connection != null)
+    {
+      LifecycleHelper.init(connection);
+      return;
+    }
+    signingKey = new DeferredKey<SigningKey>(getUniqueId(), keyLoading, () -> SigningKey.load(secret)).init();
   }
 
   /**
@@ -169,15 +268,76 @@ public class JWTCreator extends ServiceImp
   @Override
   protected void closeService()
   {
-    /* unused */
+    StreamingCompression.release();
+    clock().close();
+    if (connection != null)
+    {
+      LifecycleHelper.close(connection);
+    }
+    if (secret != null)
+    {
+      secret.clear();
+    }
+    if (signingKey != null)
+    {
+      signingKey.clear();
+      signingKey = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void start() throws CoreException
+  {
+    if (connection != null)
+    {
+      LifecycleHelper.start(connection);
+    }
+    else
+    {
+      signingKey.start();
+    }
+    super.start();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void stop()
+  {
+    super.stop();
+    if (connection != null)
+    {
+      LifecycleHelper.stop(connection);
+    }
   }
 
   /**
    * Prepare for initialisation.
    */
   @Override
-  public void prepare()
+  public void prepare() throws CoreException
+  {
+    if (connection == null && secret == null)
+    {
+      throw new CoreException("Either a secret or a connection must be configured");
+    }
+    if (connection != null)
+    {
+      LifecycleHelper.prepare(connection);
+    }
+  }
+
+  TokenClock clock()
+  {
+    return ObjectUtils.defaultIfNull(clock, DEFAULT_CLOCK);
+  }
+
+  TokenIdGenerator idGenerator()
   {
-    /* unused */
+    return ObjectUtils.defaultIfNull(idGenerator, DEFAULT_ID_GENERATOR);
   }
 }
@@ -1,27 +1,40 @@
 package com.adaptris.core.jwt;
 
 import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisConnection;
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ConnectedService;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.ServiceImp;
+import com.adaptris.core.jwt.clock.SystemClock;
+import com.adaptris.core.jwt.clock.TokenClock;
+import com.adaptris.core.jwt.secrets.InvalidSecretException;
 import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.interlok.config.DataInputParameter;
 import com.adaptris.interlok.config.DataOutputParameter;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
-import io.jsonwebtoken.JwtParserBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.WeakKeyException;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This service provides a way to decode a JSON Web Token.
@@ -42,16 +55,35 @@ import javax.validation.constraints.NotNull;
  *    </jwt-decode>
  * }</pre>
  *
+ * <p>
+ * The parser (and with it the secret's keys) is built once when the service is initialised and shared by every message;
+ * use a {@link com.adaptris.core.jwt.secrets.KeyDirectorySecret} to verify tokens from many issuers with a single
+ * decoder. Alternatively, configure a {@link JWTVerifierConnection} as the connection (usually a shared connection)
+ * instead of a secret, to share the parser, keys and verification cache across the whole adapter. The connection then
+ * takes precedence: its {@code secret}, {@code clock}, {@code max-decompressed-size} and {@code key-loading} are used,
+ * so configuring any of these on the decoder as well is rejected when the service is prepared. The decoder's
+ * {@code latency-tracing} and {@code algorithm-policy} still apply.
+ * </p>
+ * <p>
+ * With many services, {@code key-loading} can defer or parallelise loading the keys so that adapter start-up does not
+ * wait for each secret in turn; see {@link KeyLoading}.
+ * </p>
+ * <p>
+ * To find out where the time goes when decoding is slow, configure {@link LatencyTracing}. To restrict the algorithms
+ * and key sizes that are accepted, and see what each algorithm costs, configure an {@link AlgorithmPolicy}.
+ * </p>
+ *
  * @author aanderson
  * @config jwt-decode
  */
 @XStreamAlias("jwt-decode")
 @AdapterComponent
 @ComponentProfile(summary = "Encode a header and body to a JSON Web Token", tag = "jwt,decode,json,web,token", since="3.11.1")
-@DisplayOrder(order = { "jwtString", "secret", "header", "claims" })
-public class JWTDecoder extends ServiceImp
+@DisplayOrder(order = { "jwtString", "secret", "connection", "header", "claims", "maxDecompressedSize", "keyLoading", "clock", "latencyTracing", "algorithmPolicy" })
+public class JWTDecoder extends ServiceImp implements ConnectedService
 {
   private static transient Logger log = LoggerFactory.getLogger(JWTDecoder.class);
+  private static final TokenClock DEFAULT_CLOCK = new SystemClock();
 
   @NotNull
   @Valid
@@ -59,12 +91,19 @@ public class JWTDecoder extends ServiceImp
   @Setter
   private DataInputParameter<String> jwtString;
 
-  @NotNull
   @Valid
   @Getter
   @Setter
   private SecretConfigurator secret;
 
+  /**
+   * A {@link JWTVerifierConnection} to use instead of the secret.
+   */
+  @Valid
+  @Getter
+  @Setter
+  private AdaptrisConnection connection;
+
   @NotNull
   @Valid
   @Getter
@@ -77,40 +116,115 @@ public class JWTDecoder extends ServiceImp
   @Setter
   private DataOutputParameter<String> claims;
 
+  /**
+   * The maximum size, in bytes, of a compressed ({@code zip}) payload once decompressed; defaults to 1MB.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "1048576")
+  private Integer maxDecompressedSize;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "EAGER")
+  private KeyLoading keyLoading;
+
+  /**
+   * The source of the current time when checking the expiration and not-before claims; defaults to the system clock.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig(rare = true)
+  private TokenClock clock;
+
+  /**
+   * Optionally time each phase of decoding, keeping a sample of the timings and logging slow tokens.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig
+  private LatencyTracing latencyTracing;
+
+  /**
+   * Optionally restrict the algorithms and key sizes that are accepted, and keep statistics for each algorithm.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig
+  private AlgorithmPolicy algorithmPolicy;
+
+  private transient DeferredKey<ResolvedParser> parser;
+
   /**
    * {@inheritDoc}.
    */
   @Override
   public void doService(AdaptrisMessage message) throws ServiceException
   {
+    String jwt = null;
+    long started = latencyTracing != null ? System.nanoTime() : 0;
+    TokenTrace trace = null;
+    Exception error = null;
     try
     {
-      String jwt = jwtString.extract(message);
+      jwt = jwtString.extract(message);
+      trace = latencyTracing != null ? latencyTracing.start(jwt, started) : null;
 
-      JwtParserBuilder builder = Jwts.parserBuilder();
-      builder = secret.configure(builder);
-      Jws<Claims> jws = builder.build().parseClaimsJws(jwt);
+      Jws<Claims> jws = verify(jwt, trace);
 
       JSONObject head = new JSONObject(jws.getHeader());
       header.insert(head.toString(), message);
 
       JSONObject body = new JSONObject(jws.getBody());
       claims.insert(body.toString(), message);
+      if (trace != null)
+      {
+        trace.written();
+      }
     }
     catch (Exception e)
     {
+      error = e;
       log.error("An error occurred during JWT decoding", e);
       throw new ServiceException(e);
     }
+    finally
+    {
+      if (latencyTracing != null)
+      {
+        latencyTracing.finish(trace, jwt, started, error);
+      }
+    }
   }
 
   /**
    * {@inheritDoc}.
    */
   @Override
-  protected void initService()
+  protected void initService() throws CoreException
   {
-    /* unused */
+    StreamingCompression.retain();
+    clock().init();
+    DeferredKey.initSecret(secret);
+    if (latencyTracing != null)
+    {
+      latencyTracing.init(getUniqueId());
+    }
+    if (algorithmPolicy != null)
+    {
+      algorithmPolicy.init(getUniqueId());
+    }
+    if (connection != null)
+    {
+      LifecycleHelper.init(connection);
+      return;
+    }
+    parser = new DeferredKey<ResolvedParser>(getUniqueId(), keyLoading, this::buildParser).init();
   }
 
   /**
@@ -119,15 +233,157 @@ public class JWTDecoder extends ServiceImp
   @Override
   protected void closeService()
   {
-    /* unused */
+    StreamingCompression.release();
+    clock().close();
+    if (latencyTracing != null)
+    {
+      latencyTracing.close();
+    }
+    if (algorithmPolicy != null)
+    {
+      algorithmPolicy.close();
+    }
+    if (connection != null)
+    {
+      LifecycleHelper.close(connection);
+    }
+    if (secret != null)
+    {
+      secret.clear();
+    }
+    parser = null;
   }
 
   /**
    * {@inheritDoc}.
    */
   @Override
-  public void prepare()
+  public void start() throws CoreException
+  {
+    if (connection != null)
+    {
+      LifecycleHelper.start(connection);
+      if (algorithmPolicy != null)
+      {
+        try
+        {
+          // a key that the connection loads lazily is checked as each token is verified instead.
+          algorithmPolicy.checkKey(connection.retrieveConnection(JWTVerifierConnection.class).loadedVerificationKey());
+        }
+        catch (WeakKeyException e)
+        {
+          throw new CoreException(e);
+        }
+      }
+    }
+    else
+    {
+      parser.start();
+    }
+    super.start();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void stop()
+  {
+    super.stop();
+    if (connection != null)
+    {
+      LifecycleHelper.stop(connection);
+    }
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void prepare() throws CoreException
+  {
+    if (connection == null && secret == null)
+    {
+      throw new CoreException("Either a secret or a connection must be configured");
+    }
+    if (connection != null)
+    {
+      List<String> ignored = new ArrayList<>();
+      addIfSet(ignored, "secret", secret);
+      addIfSet(ignored, "clock", clock);
+      addIfSet(ignored, "max-decompressed-size", maxDecompressedSize);
+      addIfSet(ignored, "key-loading", keyLoading);
+      if (!ignored.isEmpty())
+      {
+        throw new CoreException("The connection is used instead of " + String.join(", ", ignored) + "; configure them on the connection");
+      }
+      LifecycleHelper.prepare(connection);
+    }
+  }
+
+  private static void addIfSet(List<String> names, String name, Object value)
+  {
+    if (value != null)
+    {
+      names.add(name);
+    }
+  }
+
+  private Jws<Claims> verify(String jwt, TokenTrace trace) throws CoreException
+  {
+    String alg = algorithmPolicy != null ? algorithmPolicy.check(jwt) : null;
+    JWTVerifierConnection verifier = connection != null ? connection.retrieveConnection(JWTVerifierConnection.class) : null;
+    // load the keys (if they are loaded lazily) before timing the verification.
+    JwtParser p = verifier == null ? parser.get().parser : null;
+    if (verifier != null)
+    {
+      verifier.verificationKey();
+    }
+    if (trace != null)
+    {
+      trace.keyLoaded();
+    }
+    long started = System.nanoTime();
+    try
+    {
+      Jws<Claims> jws = verifier != null ? verifier.verify(jwt) : p.parseClaimsJws(jwt);
+      if (verifier != null && algorithmPolicy != null)
+      {
+        // the connection's parser is shared, so check the key it used here instead.
+        algorithmPolicy.checkKey(verifier.verificationKey(jws));
+      }
+      if (trace != null)
+      {
+        trace.verified(jws.getHeader());
+      }
+      if (algorithmPolicy != null)
+      {
+        algorithmPolicy.verified(alg, jws.getBody().getIssuer(), System.nanoTime() - started);
+      }
+      return jws;
+    }
+    catch (CoreException | RuntimeException e)
+    {
+      if (algorithmPolicy != null)
+      {
+        algorithmPolicy.failed(alg, System.nanoTime() - started);
+      }
+      throw e;
+    }
+  }
+
+  private ResolvedParser buildParser() throws InvalidSecretException
+  {
+    return ResolvedParser.build(secret, Jwts.parserBuilder().setClock(clock()).setCompressionCodecResolver(StreamingCompression.resolver(maxDecompressedSize())), algorithmPolicy);
+  }
+
+  int maxDecompressedSize()
+  {
+    return ObjectUtils.defaultIfNull(maxDecompressedSize, StreamingCompression.DEFAULT_MAX_DECOMPRESSED_SIZE);
+  }
+
+  TokenClock clock()
   {
-    /* unused */
+    return ObjectUtils.defaultIfNull(clock, DEFAULT_CLOCK);
   }
 }
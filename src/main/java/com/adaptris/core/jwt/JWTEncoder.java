@@ -1,9 +1,12 @@
 package com.adaptris.core.jwt;
 
 import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
 import com.adaptris.annotation.ComponentProfile;
 import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.ServiceImp;
 import com.adaptris.core.jwt.secrets.SecretConfigurator;
@@ -14,6 +17,7 @@ import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.lang3.BooleanUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,7 +52,7 @@ import javax.validation.constraints.NotNull;
 @XStreamAlias("jwt-encode")
 @AdapterComponent
 @ComponentProfile(summary = "Encode a header and body to a JSON Web Token", tag = "jwt,encode,json,web,token", since="3.11.1")
-@DisplayOrder(order = { "header", "claims", "secret", "generateKey", "keyOutput", "jwtOutput" })
+@DisplayOrder(order = { "header", "claims", "secret", "generateKey", "keyOutput", "jwtOutput", "compress", "keyLoading" })
 public class JWTEncoder extends ServiceImp
 {
   private static transient Logger log = LoggerFactory.getLogger(JWTEncoder.class);
@@ -77,6 +81,23 @@ public class JWTEncoder extends ServiceImp
   @Setter
   private DataOutputParameter<String> jwtOutput;
 
+  /**
+   * Whether to compress the claims ({@code zip=DEF}); defaults to false.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "false")
+  private Boolean compress;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "EAGER")
+  private KeyLoading keyLoading;
+
+  private transient DeferredKey<SigningKey> signingKey;
+
   /**
    * {@inheritDoc}.
    */
@@ -90,7 +111,11 @@ public class JWTEncoder extends ServiceImp
       JSONObject body = new JSONObject(claims.extract(message));
 
       JwtBuilder builder = Jwts.builder().setClaims(body.toMap()).setHeader(head.toMap());
-      builder = secret.configure(builder);
+      builder = signingKey.get().sign(builder);
+      if (BooleanUtils.toBooleanDefaultIfNull(compress, false))
+      {
+        builder.compressWith(StreamingCompression.deflate());
+      }
       String jwt = builder.compact();
 
       jwtOutput.insert(jwt, message);
@@ -106,9 +131,21 @@ public class JWTEncoder extends ServiceImp
    * {@inheritDoc}.
    */
   @Override
-  protected void initService()
+  protected void initService() throws CoreException
   {
-    /* unused */
+    StreamingCompression.retain();
+    DeferredKey.initSecret(secret);
+    signingKey = new DeferredKey<SigningKey>(getUniqueId(), keyLoading, () -> SigningKey.load(secret)).init();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void start() throws CoreException
+  {
+    signingKey.start();
+    super.start();
   }
 
   /**
@@ -117,7 +154,13 @@ public class JWTEncoder extends ServiceImp
   @Override
   protected void closeService()
   {
-    /* unused */
+    StreamingCompression.release();
+    secret.clear();
+    if (signingKey != null)
+    {
+      signingKey.clear();
+      signingKey = null;
+    }
   }
 
   /**
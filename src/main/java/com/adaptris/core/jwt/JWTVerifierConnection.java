@@ -0,0 +1,300 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisConnectionImp;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.jwt.clock.SystemClock;
+import com.adaptris.core.jwt.clock.TokenClock;
+import com.adaptris.core.jwt.secrets.InvalidSecretException;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolver;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.Destroyable;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the parser, keys and verification cache for JSON Web Tokens, so they can be shared by every service in the
+ * adapter.
+ *
+ * <p>
+ * Configure this once as a shared connection, and reference it from {@link JWTDecoder} or {@link JWTCreator} instead of
+ * a secret; the secret's keys are then loaded once for the whole adapter rather than once per service. Successfully
+ * verified tokens are cached for up to {@code cache-ttl} (never beyond their own expiration), up to
+ * {@code max-cache-entries} tokens and {@code max-cache-size} characters of tokens; the cache is dropped whenever the
+ * secret's keys change. Loading the keys can be deferred or parallelised with {@code key-loading}.
+ * </p>
+ *
+ * <pre>{@code
+ *    <shared-components>
+ *      <connections>
+ *        <jwt-verifier-connection>
+ *          <unique-id>jwt</unique-id>
+ *          <secret class="base64-encoded-secret">
+ *            <secret>c64975ba3cf3f9cd58459710b0a42369f34b0759c9967fb5a47eea488e8bea79</secret>
+ *          </secret>
+ *        </jwt-verifier-connection>
+ *      </connections>
+ *    </shared-components>
+ *    ...
+ *    <jwt-decode>
+ *      <unique-id>jwt-decode</unique-id>
+ *      <connection class="shared-connection">
+ *        <lookup-name>jwt</lookup-name>
+ *      </connection>
+ *      ...
+ *    </jwt-decode>
+ * }</pre>
+ *
+ * @config jwt-verifier-connection
+ */
+@XStreamAlias("jwt-verifier-connection")
+@AdapterComponent
+@ComponentProfile(summary = "Share JSON Web Token keys, parser and verification cache", tag = "jwt,connection,verify,json,web,token", since="3.11.1")
+@DisplayOrder(order = { "secret", "maxCacheEntries", "maxCacheSize", "cacheTtl", "maxDecompressedSize", "keyLoading", "clock" })
+public class JWTVerifierConnection extends AdaptrisConnectionImp
+{
+  private static transient Logger log = LoggerFactory.getLogger(JWTVerifierConnection.class);
+  private static final TokenClock DEFAULT_CLOCK = new SystemClock();
+
+  private static final int DEFAULT_MAX_CACHE_ENTRIES = 1024;
+  private static final int DEFAULT_MAX_CACHE_SIZE = 16 * 1024 * 1024;
+  private static final TimeInterval DEFAULT_CACHE_TTL = new TimeInterval(1L, TimeUnit.MINUTES);
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private SecretConfigurator secret;
+
+  /**
+   * The maximum number of verified tokens to cache; 0 disables caching.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "1024")
+  private Integer maxCacheEntries;
+
+  /**
+   * The maximum total length of the cached tokens, in characters; defaults to 16777216.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "16777216")
+  private Integer maxCacheSize;
+
+  /**
+   * How long to cache a verified token for; defaults to 1 minute.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  private TimeInterval cacheTtl;
+
+  /**
+   * The maximum size, in bytes, of a compressed ({@code zip}) payload once decompressed; defaults to 1MB.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "1048576")
+  private Integer maxDecompressedSize;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "EAGER")
+  private KeyLoading keyLoading;
+
+  /**
+   * The source of the current time when checking the expiration and not-before claims; defaults to the system clock.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig(rare = true)
+  private TokenClock clock;
+
+  private transient DeferredKey<Material> material;
+  private transient VerificationCache cache;
+
+  /**
+   * Parse and verify a token, using the cache where possible; a cached token is read-only.
+   */
+  public Jws<Claims> verify(String jwt) throws CoreException
+  {
+    long keyVersion = keyVersion();
+    Jws<Claims> jws = cache.get(jwt, keyVersion);
+    if (jws == null)
+    {
+      jws = cache.put(jwt, material.get().parser.parseClaimsJws(jwt), keyVersion);
+    }
+    return jws;
+  }
+
+  /**
+   * Get the key that tokens are verified with, loading it if necessary; null if the secret resolves a key per token.
+   */
+  Key verificationKey() throws CoreException
+  {
+    return material.get().verificationKey;
+  }
+
+  /**
+   * Get the key that tokens are verified with if the key-loading mode has already loaded it, without loading it
+   * otherwise; null if it has not been loaded yet, or the secret resolves a key per token.
+   */
+  Key loadedVerificationKey() throws CoreException
+  {
+    return material.isLoadedOnStart() ? material.get().verificationKey : null;
+  }
+
+  /**
+   * Get the key that the given (verified) token was verified with.
+   */
+  Key verificationKey(Jws<Claims> jws) throws CoreException
+  {
+    Material m = material.get();
+    return m.resolver != null ? m.resolver.resolveSigningKey(jws.getHeader(), jws.getBody()) : m.verificationKey;
+  }
+
+  /**
+   * Sign a token with the shared signing key.
+   */
+  public JwtBuilder sign(JwtBuilder builder) throws CoreException, InvalidSecretException
+  {
+    Material m = material.get();
+    return m.signingKey != null ? m.signingKey.sign(builder) : secret.configure(builder);
+  }
+
+  @Override
+  protected void prepareConnection()
+  {
+    /* unused */
+  }
+
+  @Override
+  protected void initConnection() throws CoreException
+  {
+    StreamingCompression.retain();
+    clock().init();
+    DeferredKey.initSecret(secret);
+    cache = new VerificationCache(clock(), maxCacheEntries(), ObjectUtils.defaultIfNull(maxCacheSize, DEFAULT_MAX_CACHE_SIZE), ObjectUtils.defaultIfNull(cacheTtl, DEFAULT_CACHE_TTL).toMilliseconds());
+    material = new DeferredKey<>(getUniqueId(), keyLoading, this::load).init();
+  }
+
+  @Override
+  protected void startConnection() throws CoreException
+  {
+    material.start();
+  }
+
+  @Override
+  protected void stopConnection()
+  {
+    /* unused */
+  }
+
+  @Override
+  protected void closeConnection()
+  {
+    StreamingCompression.release();
+    clock().close();
+    if (cache != null)
+    {
+      cache.clear();
+    }
+    secret.clear();
+    if (material != null)
+    {
+      material.clear();
+      material = null;
+    }
+  }
+
+  private Material load() throws InvalidSecretException
+  {
+    Material m = new Material();
+    ResolvedParser resolved = ResolvedParser.build(secret, Jwts.parserBuilder().setClock(clock()).setCompressionCodecResolver(StreamingCompression.resolver(maxDecompressedSize())));
+    m.parser = resolved.parser;
+    m.verificationKey = resolved.key;
+    m.resolver = resolved.resolver;
+    // a secret that resolves a key per token can only verify tokens.
+    if (resolved.resolver == null)
+    {
+      m.signingKey = SigningKey.load(secret);
+    }
+    return m;
+  }
+
+  private long keyVersion() throws CoreException
+  {
+    try
+    {
+      return secret.keyVersion();
+    }
+    catch (InvalidSecretException e)
+    {
+      throw new CoreException(e);
+    }
+  }
+
+  int maxCacheEntries()
+  {
+    return ObjectUtils.defaultIfNull(maxCacheEntries, DEFAULT_MAX_CACHE_ENTRIES);
+  }
+
+  private static class Material implements Destroyable
+  {
+    private JwtParser parser;
+    private Key verificationKey;
+    private SigningKeyResolver resolver;
+    private SigningKey signingKey;
+
+    @Override
+    public void destroy()
+    {
+      DeferredKey.destroy(signingKey);
+      signingKey = null;
+      verificationKey = null;
+      resolver = null;
+      parser = null;
+    }
+
+    @Override
+    public boolean isDestroyed()
+    {
+      return parser == null;
+    }
+  }
+
+  int maxDecompressedSize()
+  {
+    return ObjectUtils.defaultIfNull(maxDecompressedSize, StreamingCompression.DEFAULT_MAX_DECOMPRESSED_SIZE);
+  }
+
+  TokenClock clock()
+  {
+    return ObjectUtils.defaultIfNull(clock, DEFAULT_CLOCK);
+  }
+}
@@ -0,0 +1,155 @@
+package com.adaptris.core.jwt;
+
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Encoders;
+import org.json.JSONObject;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+
+/**
+ * Minimal JWE compact serialization (RFC 7516), since jjwt does not yet support encrypted tokens.
+ *
+ * <p>
+ * A shared secret key is used directly ({@code dir}) as the AES-GCM content encryption key, so must be 128, 192 or 256
+ * bits long; the {@code enc} in the header is chosen from, and on decryption checked against, the key length. An RSA key wraps a random 256 bit content encryption key with {@code RSA-OAEP-256}.
+ * </p>
+ */
+final class JsonWebEncryption
+{
+  static final String CONTENT_TYPE_JWT = "JWT";
+
+  private static final String DIRECT = "dir";
+  private static final String RSA_OAEP_256 = "RSA-OAEP-256";
+  private static final String A256GCM = "A256GCM";
+
+  private static final int IV_LENGTH = 12;
+  private static final int TAG_LENGTH = 16;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private JsonWebEncryption()
+  {
+  }
+
+  static String encrypt(String payload, Key key, String contentType) throws GeneralSecurityException
+  {
+    JSONObject header = new JSONObject();
+    byte[] cek;
+    byte[] encryptedKey;
+    if (key instanceof SecretKey)
+    {
+      cek = key.getEncoded();
+      encryptedKey = new byte[0];
+      header.put("alg", DIRECT);
+      header.put("enc", contentEncryption(cek.length));
+    }
+    else if (key instanceof RSAKey)
+    {
+      cek = new byte[32];
+      RANDOM.nextBytes(cek);
+      encryptedKey = rsaCipher(Cipher.ENCRYPT_MODE, key).doFinal(cek);
+      header.put("alg", RSA_OAEP_256);
+      header.put("enc", A256GCM);
+    }
+    else
+    {
+      throw new InvalidKeyException("Unsupported encryption key algorithm " + key.getAlgorithm());
+    }
+    if (contentType != null)
+    {
+      header.put("cty", contentType);
+    }
+    String encodedHeader = Encoders.BASE64URL.encode(header.toString().getBytes(StandardCharsets.UTF_8));
+    byte[] iv = new byte[IV_LENGTH];
+    RANDOM.nextBytes(iv);
+
+    Cipher cipher = contentCipher(Cipher.ENCRYPT_MODE, cek, iv, encodedHeader);
+    Arrays.fill(cek, (byte)0);
+    byte[] output = cipher.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    byte[] ciphertext = Arrays.copyOfRange(output, 0, output.length - TAG_LENGTH);
+    byte[] tag = Arrays.copyOfRange(output, output.length - TAG_LENGTH, output.length);
+
+    return String.join(".", encodedHeader, Encoders.BASE64URL.encode(encryptedKey), Encoders.BASE64URL.encode(iv),
+        Encoders.BASE64URL.encode(ciphertext), Encoders.BASE64URL.encode(tag));
+  }
+
+  static String decrypt(String jwe, Key key) throws GeneralSecurityException
+  {
+    String[] parts = jwe.split("\\.", -1);
+    if (parts.length != 5)
+    {
+      throw new IllegalArgumentException("Expected 5 parts in an encrypted token but found " + parts.length);
+    }
+    JSONObject header = new JSONObject(new String(Decoders.BASE64URL.decode(parts[0]), StandardCharsets.UTF_8));
+    String alg = header.getString("alg");
+    byte[] cek;
+    if (DIRECT.equals(alg) && key instanceof SecretKey)
+    {
+      cek = key.getEncoded();
+    }
+    else if (RSA_OAEP_256.equals(alg) && key instanceof RSAKey)
+    {
+      cek = rsaCipher(Cipher.DECRYPT_MODE, key).doFinal(Decoders.BASE64URL.decode(parts[1]));
+    }
+    else
+    {
+      throw new InvalidKeyException("Key algorithm " + key.getAlgorithm() + " cannot be used for " + alg);
+    }
+    if (!contentEncryption(cek.length).equals(header.getString("enc")))
+    {
+      Arrays.fill(cek, (byte)0);
+      throw new InvalidKeyException("Key length does not match content encryption " + header.getString("enc"));
+    }
+    byte[] ciphertext = Decoders.BASE64URL.decode(parts[3]);
+    byte[] tag = Decoders.BASE64URL.decode(parts[4]);
+    byte[] input = Arrays.copyOf(ciphertext, ciphertext.length + tag.length);
+    System.arraycopy(tag, 0, input, ciphertext.length, tag.length);
+
+    Cipher cipher = contentCipher(Cipher.DECRYPT_MODE, cek, Decoders.BASE64URL.decode(parts[2]), parts[0]);
+    Arrays.fill(cek, (byte)0);
+    return new String(cipher.doFinal(input), StandardCharsets.UTF_8);
+  }
+
+  private static String contentEncryption(int keyLength) throws InvalidKeyException
+  {
+    switch (keyLength)
+    {
+      case 16:
+        return "A128GCM";
+      case 24:
+        return "A192GCM";
+      case 32:
+        return A256GCM;
+      default:
+        throw new InvalidKeyException("Shared key must be 128, 192 or 256 bits for direct encryption");
+    }
+  }
+
+  private static Cipher contentCipher(int mode, byte[] cek, byte[] iv, String encodedHeader) throws GeneralSecurityException
+  {
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(mode, new SecretKeySpec(cek, "AES"), new GCMParameterSpec(TAG_LENGTH * 8, iv));
+    cipher.updateAAD(encodedHeader.getBytes(StandardCharsets.US_ASCII));
+    return cipher;
+  }
+
+  private static Cipher rsaCipher(int mode, Key key) throws GeneralSecurityException
+  {
+    Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPPadding");
+    cipher.init(mode, key, new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+    return cipher;
+  }
+}
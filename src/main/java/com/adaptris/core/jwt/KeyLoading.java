@@ -0,0 +1,25 @@
+package com.adaptris.core.jwt;
+
+/**
+ * When the keys (and parser) of a service are loaded.
+ */
+public enum KeyLoading
+{
+  /**
+   * Load the keys during initialisation; this is the default.
+   */
+  EAGER,
+  /**
+   * Load the keys on a shared, bounded pool during initialisation, and wait for them when the service is started; so
+   * many services load their keys at the same time.
+   */
+  PARALLEL,
+  /**
+   * Start loading the keys on a shared, bounded pool during initialisation, but only wait for them on first use.
+   */
+  WARM_UP,
+  /**
+   * Load the keys on first use.
+   */
+  LAZY
+}
@@ -0,0 +1,210 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times each phase of decoding a token: loading the key, parsing and verifying the signature, and writing the output.
+ *
+ * <p>
+ * Whether a token is sampled ({@code sample-rate}, 1% by default) is decided before it is decoded, and only sampled
+ * tokens have each phase timed; every other token just has its total time taken, so that a token slower than
+ * {@code slow-threshold} is still kept, with that total. The traces are kept in a fixed size ring buffer
+ * ({@code buffer-size} traces) that can be dumped as JSON through JMX, as
+ * {@code com.adaptris.core.jwt:type=LatencyTracing,id="<unique-id>"} (with a suffix if the unique-id is missing or
+ * already registered). Slow tokens are also logged with their algorithm, key id and size; the token itself is never
+ * recorded.
+ * </p>
+ *
+ * <pre>{@code
+ *    <jwt-decode>
+ *      ...
+ *      <latency-tracing>
+ *        <sample-rate>0.05</sample-rate>
+ *        <slow-threshold>
+ *          <unit>MILLISECONDS</unit>
+ *          <interval>20</interval>
+ *        </slow-threshold>
+ *      </latency-tracing>
+ *    </jwt-decode>
+ * }</pre>
+ *
+ * @config jwt-latency-tracing
+ */
+@XStreamAlias("jwt-latency-tracing")
+public class LatencyTracing implements LatencyTracingMBean
+{
+  private static transient Logger log = LoggerFactory.getLogger(LatencyTracing.class);
+
+  private static final double DEFAULT_SAMPLE_RATE = 0.01;
+  private static final int DEFAULT_BUFFER_SIZE = 1024;
+  private static final TimeInterval DEFAULT_SLOW_THRESHOLD = new TimeInterval(100L, TimeUnit.MILLISECONDS);
+
+  /**
+   * The fraction of tokens, between 0 and 1, to keep traces for; defaults to 0.01.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "0.01")
+  private Double sampleRate;
+
+  /**
+   * The number of traces to keep; defaults to 1024.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "1024")
+  private Integer bufferSize;
+
+  /**
+   * Tokens that take longer than this are always kept, and logged; defaults to 100ms.
+   */
+  @Getter
+  @Setter
+  private TimeInterval slowThreshold;
+
+  private transient AtomicReferenceArray<TokenTrace> traces;
+  private transient AtomicLong next;
+  private transient LongAdder timed;
+  private transient LongAdder slow;
+  private transient long slowNanos;
+  private transient ObjectName objectName;
+  private transient String name;
+
+  /**
+   * Create the ring buffer and register for JMX.
+   */
+  void init(String name)
+  {
+    this.name = name;
+    traces = new AtomicReferenceArray<>(Math.max(1, ObjectUtils.defaultIfNull(bufferSize, DEFAULT_BUFFER_SIZE)));
+    next = new AtomicLong();
+    timed = new LongAdder();
+    slow = new LongAdder();
+    slowNanos = TimeUnit.MILLISECONDS.toNanos(ObjectUtils.defaultIfNull(slowThreshold, DEFAULT_SLOW_THRESHOLD).toMilliseconds());
+    ManagedBeans.unregister(objectName);
+    objectName = ManagedBeans.register(this, "LatencyTracing", name);
+  }
+
+  /**
+   * Unregister from JMX and discard the traces.
+   */
+  void close()
+  {
+    ManagedBeans.unregister(objectName);
+    objectName = null;
+    traces = null;
+  }
+
+  /**
+   * Decide whether to sample a token, before anything is timed.
+   *
+   * @param started when decoding started, from {@link System#nanoTime()}.
+   * @return a trace to time each phase with, or null if the token is not sampled.
+   */
+  TokenTrace start(String jwt, long started)
+  {
+    return ThreadLocalRandom.current().nextDouble() < sampleRate() ? new TokenTrace(jwt, started) : null;
+  }
+
+  /**
+   * Record a token; a sampled token is always kept, and one that was not sampled is only kept (with its total time) if
+   * it was slow.
+   *
+   * @param trace the trace from {@link #start(String, long)}, if the token was sampled.
+   * @param error why decoding failed, if it did.
+   */
+  void finish(TokenTrace trace, String jwt, long started, Exception error)
+  {
+    long total = System.nanoTime() - started;
+    timed.increment();
+    boolean isSlow = total >= slowNanos;
+    if (!isSlow && trace == null)
+    {
+      return;
+    }
+    TokenTrace t = trace != null ? trace : new TokenTrace(jwt, started);
+    if (error != null)
+    {
+      t.failed(error);
+    }
+    t.finish(total);
+    t.describe(jwt);
+    if (isSlow)
+    {
+      slow.increment();
+      log.warn("Slow token in [{}]: {}", name, t);
+    }
+    AtomicReferenceArray<TokenTrace> buffer = traces;
+    if (buffer != null)
+    {
+      buffer.set((int)(next.getAndIncrement() % buffer.length()), t);
+    }
+  }
+
+  @Override
+  public long getTimedTokens()
+  {
+    return timed != null ? timed.sum() : 0;
+  }
+
+  @Override
+  public long getSlowTokens()
+  {
+    return slow != null ? slow.sum() : 0;
+  }
+
+  @Override
+  public String dump()
+  {
+    JSONArray result = new JSONArray();
+    AtomicReferenceArray<TokenTrace> buffer = traces;
+    if (buffer != null)
+    {
+      long end = next.get();
+      for (long i = Math.max(0, end - buffer.length()); i < end; i++)
+      {
+        TokenTrace trace = buffer.get((int)(i % buffer.length()));
+        if (trace != null)
+        {
+          result.put(trace.toJSON());
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  @Override
+  public void reset()
+  {
+    AtomicReferenceArray<TokenTrace> buffer = traces;
+    if (buffer != null)
+    {
+      for (int i = 0; i < buffer.length(); i++)
+      {
+        buffer.set(i, null);
+      }
+      timed.reset();
+      slow.reset();
+    }
+  }
+
+  double sampleRate()
+  {
+    return ObjectUtils.defaultIfNull(sampleRate, DEFAULT_SAMPLE_RATE);
+  }
+}
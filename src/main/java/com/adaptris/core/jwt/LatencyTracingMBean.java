@@ -0,0 +1,27 @@
+package com.adaptris.core.jwt;
+
+/**
+ * Management interface for {@link LatencyTracing}.
+ */
+public interface LatencyTracingMBean
+{
+  /**
+   * The number of tokens that have been timed.
+   */
+  long getTimedTokens();
+
+  /**
+   * The number of tokens that exceeded the slow threshold.
+   */
+  long getSlowTokens();
+
+  /**
+   * The most recent sampled and slow traces, oldest first, as a JSON array.
+   */
+  String dump();
+
+  /**
+   * Discard the recorded traces and counters.
+   */
+  void reset();
+}
@@ -0,0 +1,86 @@
+package com.adaptris.core.jwt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers the management interfaces of this package with the platform MBean server, as
+ * {@code com.adaptris.core.jwt:type=<type>,id="<id>"}.
+ *
+ * <p>
+ * If that name is already taken (two services with the same unique-id, or none), a suffix is added to the id
+ * ({@code id="<id>#2"}), so every bean is registered under a name of its own and only ever unregisters that name.
+ * </p>
+ */
+public final class ManagedBeans
+{
+  private static transient Logger log = LoggerFactory.getLogger(ManagedBeans.class);
+
+  private static final String DOMAIN = "com.adaptris.core.jwt";
+  private static final String UNNAMED = "unnamed";
+
+  private static final AtomicInteger SUFFIX = new AtomicInteger(1);
+
+  private ManagedBeans()
+  {
+  }
+
+  /**
+   * Register a bean.
+   *
+   * @return the name it was registered as, or null if it could not be registered.
+   */
+  public static ObjectName register(Object bean, String type, String id)
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    String base = id != null ? id : UNNAMED;
+    String unique = base;
+    try
+    {
+      while (true)
+      {
+        ObjectName name = new ObjectName(DOMAIN + ":type=" + type + ",id=" + ObjectName.quote(unique));
+        try
+        {
+          server.registerMBean(bean, name);
+          if (!unique.equals(id))
+          {
+            log.debug("Registered {} for [{}] as [{}]", type, id, name);
+          }
+          return name;
+        }
+        catch (InstanceAlreadyExistsException e)
+        {
+          unique = base + "#" + SUFFIX.incrementAndGet();
+        }
+      }
+    }
+    catch (JMException e)
+    {
+      log.warn("Could not register {} for [{}] with JMX", type, id, e);
+      return null;
+    }
+  }
+
+  public static void unregister(ObjectName name)
+  {
+    if (name != null)
+    {
+      try
+      {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      }
+      catch (JMException e)
+      {
+        log.trace("Could not unregister [{}]", name, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.ServiceImp;
+import com.adaptris.core.jwt.clock.SystemClock;
+import com.adaptris.core.jwt.clock.TokenClock;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.interlok.config.DataInputParameter;
+import com.adaptris.interlok.config.DataOutputParameter;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.security.Key;
+
+/**
+ * This service provides a way to decode a nested (signed then encrypted) JSON Web Token.
+ *
+ * <p>
+ * The token is decrypted with the private key of the encryption secret, and the signature of the nested token is then
+ * verified with the public key of the signing secret. The keys and parser are resolved once when the service is
+ * initialised, unless deferred by {@code key-loading}.
+ * </p>
+ *
+ * <pre>{@code
+ *    <jwt-nested-decode>
+ *      <unique-id>jwt-nested-decode</unique-id>
+ *      <jwt-string class="string-payload-data-input-parameter"/>
+ *      <encryption-secret class="base64-encoded-secret">
+ *        <secret>AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=</secret>
+ *      </encryption-secret>
+ *      <signing-secret class="pgp-secret">
+ *        <path>/path/to/secret.key</path>
+ *        <password>passphrase</password>
+ *      </signing-secret>
+ *      <header class="multi-payload-string-output-parameter">
+ *        <payload-id>header</payload-id>
+ *      </header>
+ *      <claims class="multi-payload-string-output-parameter">
+ *        <payload-id>claims</payload-id>
+ *      </claims>
+ *    </jwt-nested-decode>
+ * }</pre>
+ *
+ * @config jwt-nested-decode
+ */
+@XStreamAlias("jwt-nested-decode")
+@AdapterComponent
+@ComponentProfile(summary = "Decrypt and verify a nested JSON Web Token", tag = "jwt,jwe,decode,decrypt,json,web,token", since="3.11.1")
+@DisplayOrder(order = { "jwtString", "encryptionSecret", "signingSecret", "header", "claims", "maxDecompressedSize", "keyLoading", "clock" })
+public class NestedJWTDecoder extends ServiceImp
+{
+  private static transient Logger log = LoggerFactory.getLogger(NestedJWTDecoder.class);
+  private static final TokenClock DEFAULT_CLOCK = new SystemClock();
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataInputParameter<String> jwtString;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private SecretConfigurator encryptionSecret;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private SecretConfigurator signingSecret;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataOutputParameter<String> header;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataOutputParameter<String> claims;
+
+  /**
+   * The maximum size, in bytes, of a compressed ({@code zip}) payload once decompressed; defaults to 1MB.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "1048576")
+  private Integer maxDecompressedSize;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "EAGER")
+  private KeyLoading keyLoading;
+
+  /**
+   * The source of the current time when checking the expiration and not-before claims; defaults to the system clock.
+   */
+  @Getter
+  @Setter
+  @Valid
+  @AdvancedConfig(rare = true)
+  private TokenClock clock;
+
+  private transient DeferredKey<Key> decryptionKey;
+  private transient DeferredKey<JwtParser> parser;
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void doService(AdaptrisMessage message) throws ServiceException
+  {
+    try
+    {
+      String jws = JsonWebEncryption.decrypt(jwtString.extract(message), decryptionKey.get());
+      Jws<Claims> jwt = parser.get().parseClaimsJws(jws);
+
+      JSONObject head = new JSONObject(jwt.getHeader());
+      header.insert(head.toString(), message);
+
+      JSONObject body = new JSONObject(jwt.getBody());
+      claims.insert(body.toString(), message);
+    }
+    catch (Exception e)
+    {
+      log.error("An error occurred during nested JWT decoding", e);
+      throw new ServiceException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  protected void initService() throws CoreException
+  {
+    StreamingCompression.retain();
+    clock().init();
+    DeferredKey.initSecret(encryptionSecret);
+    DeferredKey.initSecret(signingSecret);
+    decryptionKey = new DeferredKey<Key>(getUniqueId() + "-decryption", keyLoading, encryptionSecret::decryptionKey).init();
+    parser = new DeferredKey<JwtParser>(getUniqueId() + "-signing", keyLoading, () -> Jwts.parserBuilder().setClock(clock()).setSigningKey(signingSecret.publicKey()).setCompressionCodecResolver(StreamingCompression.resolver(maxDecompressedSize())).build()).init();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void start() throws CoreException
+  {
+    decryptionKey.start();
+    parser.start();
+    super.start();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  protected void closeService()
+  {
+    StreamingCompression.release();
+    clock().close();
+    encryptionSecret.clear();
+    signingSecret.clear();
+    if (decryptionKey != null)
+    {
+      decryptionKey.clear();
+      decryptionKey = null;
+    }
+    parser = null;
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void prepare()
+  {
+    /* unused */
+  }
+
+  int maxDecompressedSize()
+  {
+    return ObjectUtils.defaultIfNull(maxDecompressedSize, StreamingCompression.DEFAULT_MAX_DECOMPRESSED_SIZE);
+  }
+
+  TokenClock clock()
+  {
+    return ObjectUtils.defaultIfNull(clock, DEFAULT_CLOCK);
+  }
+}
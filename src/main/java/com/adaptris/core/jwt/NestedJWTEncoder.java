@@ -0,0 +1,181 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.annotation.AdapterComponent;
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.ComponentProfile;
+import com.adaptris.annotation.DisplayOrder;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.ServiceImp;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.interlok.config.DataInputParameter;
+import com.adaptris.interlok.config.DataOutputParameter;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import io.jsonwebtoken.Jwts;
+import lombok.Getter;
+import lombok.Setter;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.security.Key;
+
+/**
+ * This service provides a way to encode data as a nested (signed then encrypted) JSON Web Token.
+ *
+ * <p>
+ * The claims are signed with the private key of the signing secret (adding its key id, if any, as the {@code kid} of
+ * the nested token), and the resulting token is then encrypted with the public key of the encryption secret; both steps
+ * happen in memory. The keys are resolved once when the service is initialised, unless deferred by {@code key-loading}.
+ * </p>
+ *
+ * <pre>{@code
+ *    <jwt-nested-encode>
+ *      <unique-id>jwt-nested-encode</unique-id>
+ *      <header class="multi-payload-string-input-parameter">
+ *        <payload-id>header</payload-id>
+ *      </header>
+ *      <claims class="multi-payload-string-input-parameter">
+ *        <payload-id>claims</payload-id>
+ *      </claims>
+ *      <signing-secret class="pgp-secret">
+ *        <path>/path/to/secret.key</path>
+ *        <password>passphrase</password>
+ *      </signing-secret>
+ *      <encryption-secret class="base64-encoded-secret">
+ *        <secret>AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=</secret>
+ *      </encryption-secret>
+ *      <jwt-output class="multi-payload-string-output-parameter">
+ *        <payload-id>output</payload-id>
+ *      </jwt-output>
+ *    </jwt-nested-encode>
+ * }</pre>
+ *
+ * @config jwt-nested-encode
+ */
+@XStreamAlias("jwt-nested-encode")
+@AdapterComponent
+@ComponentProfile(summary = "Sign then encrypt a header and body to a nested JSON Web Token", tag = "jwt,jwe,encode,encrypt,json,web,token", since="3.11.1")
+@DisplayOrder(order = { "header", "claims", "signingSecret", "encryptionSecret", "jwtOutput", "keyLoading" })
+public class NestedJWTEncoder extends ServiceImp
+{
+  private static transient Logger log = LoggerFactory.getLogger(NestedJWTEncoder.class);
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataInputParameter<String> header;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataInputParameter<String> claims;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private SecretConfigurator signingSecret;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private SecretConfigurator encryptionSecret;
+
+  @NotNull
+  @Valid
+  @Getter
+  @Setter
+  private DataOutputParameter<String> jwtOutput;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "EAGER")
+  private KeyLoading keyLoading;
+
+  private transient DeferredKey<SigningKey> signingKey;
+  private transient DeferredKey<Key> encryptionKey;
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void doService(AdaptrisMessage message) throws ServiceException
+  {
+    try
+    {
+      JSONObject head = new JSONObject(header.extract(message));
+      JSONObject body = new JSONObject(claims.extract(message));
+
+      String jws = signingKey.get().sign(Jwts.builder().setHeader(head.toMap()).setClaims(body.toMap())).compact();
+      String jwe = JsonWebEncryption.encrypt(jws, encryptionKey.get(), JsonWebEncryption.CONTENT_TYPE_JWT);
+
+      jwtOutput.insert(jwe, message);
+    }
+    catch (Exception e)
+    {
+      log.error("An error occurred during nested JWT encoding", e);
+      throw new ServiceException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  protected void initService() throws CoreException
+  {
+    DeferredKey.initSecret(signingSecret);
+    DeferredKey.initSecret(encryptionSecret);
+    signingKey = new DeferredKey<SigningKey>(getUniqueId() + "-signing", keyLoading, () -> SigningKey.load(signingSecret)).init();
+    encryptionKey = new DeferredKey<Key>(getUniqueId() + "-encryption", keyLoading, encryptionSecret::encryptionKey).init();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void start() throws CoreException
+  {
+    signingKey.start();
+    encryptionKey.start();
+    super.start();
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  protected void closeService()
+  {
+    signingSecret.clear();
+    encryptionSecret.clear();
+    if (signingKey != null)
+    {
+      signingKey.clear();
+      signingKey = null;
+    }
+    if (encryptionKey != null)
+    {
+      encryptionKey.clear();
+      encryptionKey = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}.
+   */
+  @Override
+  public void prepare()
+  {
+    /* unused */
+  }
+}
@@ -0,0 +1,108 @@
+package com.adaptris.core.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A read-only view of a verified token, so that one cached token can be handed to many callers without any of them
+ * changing what the others see.
+ *
+ * <p>
+ * The header and claims are views of the originals: reading them is unchanged, but their setters and any other
+ * attempt to modify them throw {@link UnsupportedOperationException}. Values nested inside a claim (a JSON object or
+ * array) are not copied, and must not be modified.
+ * </p>
+ */
+final class ReadOnlyJws implements Jws<Claims>
+{
+  private final JwsHeader header;
+  private final Claims body;
+  private final String signature;
+
+  private ReadOnlyJws(Jws<Claims> jws)
+  {
+    header = readOnly(JwsHeader.class, jws.getHeader());
+    body = readOnly(Claims.class, jws.getBody());
+    signature = jws.getSignature();
+  }
+
+  static Jws<Claims> of(Jws<Claims> jws)
+  {
+    return jws instanceof ReadOnlyJws ? jws : new ReadOnlyJws(jws);
+  }
+
+  @Override
+  public JwsHeader getHeader()
+  {
+    return header;
+  }
+
+  @Override
+  public Claims getBody()
+  {
+    return body;
+  }
+
+  @Override
+  public String getSignature()
+  {
+    return signature;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "header=" + header + ",body=" + body + ",signature=" + signature;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T readOnly(Class<T> type, Map<String, Object> target)
+  {
+    return (T)Proxy.newProxyInstance(ReadOnlyJws.class.getClassLoader(), new Class<?>[] { type }, new ReadOnlyHandler(target));
+  }
+
+  /**
+   * Map methods go to an unmodifiable view; the typed getters go to the original, and its setters are refused.
+   */
+  private static class ReadOnlyHandler implements InvocationHandler
+  {
+    private final Map<String, Object> target;
+    private final Map<String, Object> view;
+
+    private ReadOnlyHandler(Map<String, Object> target)
+    {
+      this.target = target;
+      view = Collections.unmodifiableMap(target);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+      Object delegate = target;
+      if (method.getDeclaringClass() == Map.class)
+      {
+        delegate = view;
+      }
+      else if (method.getName().startsWith("set"))
+      {
+        throw new UnsupportedOperationException("A cached token cannot be modified");
+      }
+      try
+      {
+        return method.invoke(delegate, args);
+      }
+      catch (InvocationTargetException e)
+      {
+        throw e.getCause();
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.adaptris.core.jwt;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses durations that are relative to the time a token is issued.
+ *
+ * <p>
+ * Accepts either the short form, a signed number followed by one of {@code ms}, {@code s}, {@code m}, {@code h} or
+ * {@code d} (for example {@code 5m} or {@code -30s}), or an ISO-8601 duration such as {@code PT5M}.
+ * </p>
+ */
+final class RelativeTime
+{
+  private static final Pattern SHORT_FORM = Pattern.compile("^([+-]?\\d+)\\s*(ms|s|m|h|d)$");
+
+  private RelativeTime()
+  {
+  }
+
+  static Duration parse(String value)
+  {
+    if (value == null || value.trim().isEmpty())
+    {
+      throw new IllegalArgumentException("No duration specified");
+    }
+    String s = value.trim();
+    Matcher matcher = SHORT_FORM.matcher(s.toLowerCase(Locale.ROOT));
+    if (matcher.matches())
+    {
+      long amount = Long.parseLong(matcher.group(1));
+      switch (matcher.group(2))
+      {
+        case "ms":
+          return Duration.ofMillis(amount);
+        case "s":
+          return Duration.ofSeconds(amount);
+        case "m":
+          return Duration.ofMinutes(amount);
+        case "h":
+          return Duration.ofHours(amount);
+        default:
+          return Duration.ofDays(amount);
+      }
+    }
+    try
+    {
+      return Duration.parse(s);
+    }
+    catch (Exception e)
+    {
+      throw new IllegalArgumentException("Invalid duration [" + value + "]", e);
+    }
+  }
+
+  static Date offset(Date from, String duration)
+  {
+    return new Date(from.getTime() + parse(duration).toMillis());
+  }
+}
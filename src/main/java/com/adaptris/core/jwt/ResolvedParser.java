@@ -0,0 +1,60 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.jwt.secrets.InvalidSecretException;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.JwtParserBuilder;
+import io.jsonwebtoken.SigningKeyResolver;
+
+import java.security.Key;
+
+/**
+ * A parser built from a secret, together with the verification key it was built with, so that the key can be checked
+ * without being loaded a second time.
+ */
+final class ResolvedParser
+{
+  final JwtParser parser;
+
+  /**
+   * The verification key, or null if the secret resolves a key per token (a key directory, for example).
+   */
+  final Key key;
+
+  /**
+   * The resolver that chooses the key per token, or null if there is a single verification key.
+   */
+  final SigningKeyResolver resolver;
+
+  private ResolvedParser(JwtParser parser, Key key, SigningKeyResolver resolver)
+  {
+    this.parser = parser;
+    this.key = key;
+    this.resolver = resolver;
+  }
+
+  static ResolvedParser build(SecretConfigurator secret, JwtParserBuilder builder) throws InvalidSecretException
+  {
+    return build(secret, builder, null);
+  }
+
+  /**
+   * Build the parser, checking the verification key (or every key resolved per token) against the policy, if any.
+   *
+   * @throws io.jsonwebtoken.security.WeakKeyException if the verification key is too small for the policy.
+   */
+  static ResolvedParser build(SecretConfigurator secret, JwtParserBuilder builder, AlgorithmPolicy policy) throws InvalidSecretException
+  {
+    SigningKeyResolver resolver = secret.keyResolver();
+    if (resolver != null)
+    {
+      return new ResolvedParser(builder.setSigningKeyResolver(policy != null ? policy.checking(resolver) : resolver).build(), null, resolver);
+    }
+    Key key = secret.publicKey();
+    if (policy != null)
+    {
+      policy.checkKey(key);
+    }
+    return new ResolvedParser(builder.setSigningKey(key).build(), key, null);
+  }
+}
@@ -0,0 +1,51 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.jwt.secrets.InvalidSecretException;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+
+import javax.security.auth.Destroyable;
+import java.security.Key;
+
+/**
+ * A signing key and its key id, resolved once from a secret so that it isn't decoded again for every token.
+ */
+final class SigningKey implements Destroyable
+{
+  private volatile Key key;
+  private final String keyId;
+
+  private SigningKey(Key key, String keyId)
+  {
+    this.key = key;
+    this.keyId = keyId;
+  }
+
+  static SigningKey load(SecretConfigurator secret) throws InvalidSecretException
+  {
+    return new SigningKey(secret.privateKey(), secret.keyId());
+  }
+
+  JwtBuilder sign(JwtBuilder builder)
+  {
+    if (keyId != null)
+    {
+      builder.setHeaderParam(JwsHeader.KEY_ID, keyId);
+    }
+    return builder.signWith(key);
+  }
+
+  @Override
+  public void destroy()
+  {
+    DeferredKey.destroy(key);
+    key = null;
+  }
+
+  @Override
+  public boolean isDestroyed()
+  {
+    return key == null;
+  }
+}
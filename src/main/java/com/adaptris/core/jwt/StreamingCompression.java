@@ -0,0 +1,356 @@
+package com.adaptris.core.jwt;
+
+import io.jsonwebtoken.CompressionCodec;
+import io.jsonwebtoken.CompressionCodecResolver;
+import io.jsonwebtoken.CompressionException;
+import io.jsonwebtoken.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of token payloads ({@code zip} header) that limits the size of decompressed payloads.
+ *
+ * <p>
+ * Payloads are compressed with {@code DEF}, reusing a {@link Deflater} and {@link Inflater} per thread rather than
+ * creating one per token. Decompression is streamed in fixed-size chunks and stops as soon as the payload exceeds the
+ * limit, so a small token cannot inflate into an arbitrarily large payload (a zip bomb). {@code GZIP} payloads can be
+ * decompressed too, with the same limit and a per-thread {@link Inflater} of their own; the GZIP header and trailer are
+ * read here, rather than creating a {@link java.util.zip.GZIPInputStream} (and its inflater) per token.
+ * </p>
+ * <p>
+ * The per-thread deflaters and inflaters hold native memory until they are ended. Every component that compresses or
+ * decompresses payloads calls {@link #retain()} when it is initialised and {@link #release()} when it is closed; once
+ * the last one is closed, every thread's deflater and inflater is ended, and a thread that later needs one creates it
+ * again.
+ * </p>
+ */
+final class StreamingCompression
+{
+  static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 1024 * 1024;
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int GZIP_HEADER_SIZE = 10;
+  private static final int GZIP_TRAILER_SIZE = 8;
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private static final ThreadLocal<Codecs> CODECS = new ThreadLocal<>();
+  private static final Set<Codecs> ALL_CODECS = new HashSet<>();
+  private static volatile int generation;
+  private static int users;
+
+  private StreamingCompression()
+  {
+  }
+
+  /**
+   * Call when a component that uses compression is initialised.
+   */
+  static synchronized void retain()
+  {
+    users++;
+  }
+
+  /**
+   * Call when a component that uses compression is closed; when none are left, the native resources of every thread's
+   * deflater and inflater are released.
+   */
+  static synchronized void release()
+  {
+    if (users > 0 && --users == 0)
+    {
+      generation++;
+      ALL_CODECS.forEach(Codecs::end);
+      ALL_CODECS.clear();
+    }
+  }
+
+  /**
+   * Get the codec to compress payloads with.
+   */
+  static CompressionCodec deflate()
+  {
+    return new Deflate(DEFAULT_MAX_DECOMPRESSED_SIZE);
+  }
+
+  /**
+   * Get a resolver for parsing tokens that limits decompressed payloads to the given number of bytes.
+   */
+  static CompressionCodecResolver resolver(int maxDecompressedSize)
+  {
+    Deflate deflate = new Deflate(maxDecompressedSize);
+    Gzip gzip = new Gzip(maxDecompressedSize);
+    return header -> resolve(header, deflate, gzip);
+  }
+
+  private static CompressionCodec resolve(Header header, Deflate deflate, Gzip gzip)
+  {
+    String zip = header.getCompressionAlgorithm();
+    if (zip == null)
+    {
+      return null;
+    }
+    if (deflate.getAlgorithmName().equalsIgnoreCase(zip))
+    {
+      return deflate;
+    }
+    if (gzip.getAlgorithmName().equalsIgnoreCase(zip))
+    {
+      return gzip;
+    }
+    throw new CompressionException("Unsupported compression algorithm [" + zip + "]");
+  }
+
+  private static void checkLimit(long size, int max)
+  {
+    if (size > max)
+    {
+      throw new CompressionException("Decompressed payload exceeds the maximum of " + max + " bytes");
+    }
+  }
+
+  private static Codecs codecs()
+  {
+    Codecs codecs = CODECS.get();
+    if (codecs == null || codecs.generation != generation)
+    {
+      codecs = new Codecs();
+      synchronized (StreamingCompression.class)
+      {
+        codecs.generation = generation;
+        ALL_CODECS.add(codecs);
+      }
+      CODECS.set(codecs);
+    }
+    return codecs;
+  }
+
+  /**
+   * Inflate all of the input to an inflater, up to the limit.
+   */
+  private static byte[] inflate(Inflater inflater, byte[] chunk, int max, int expected) throws DataFormatException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(max, expected));
+    while (!inflater.finished())
+    {
+      int count = inflater.inflate(chunk);
+      if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+      {
+        throw new CompressionException("Compressed payload is truncated");
+      }
+      checkLimit((long)out.size() + count, max);
+      out.write(chunk, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * The deflater, inflaters and buffer of one thread.
+   */
+  private static class Codecs
+  {
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private final Inflater gzipInflater = new Inflater(true);
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int generation;
+
+    private void end()
+    {
+      deflater.end();
+      inflater.end();
+      gzipInflater.end();
+    }
+  }
+
+  private static class Deflate implements CompressionCodec
+  {
+    private final int maxDecompressedSize;
+
+    private Deflate(int maxDecompressedSize)
+    {
+      this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    @Override
+    public String getAlgorithmName()
+    {
+      return "DEF";
+    }
+
+    @Override
+    public byte[] compress(byte[] payload)
+    {
+      Codecs codecs = codecs();
+      Deflater deflater = codecs.deflater;
+      byte[] chunk = codecs.chunk;
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, payload.length / 4));
+      try
+      {
+        deflater.setInput(payload);
+        deflater.finish();
+        while (!deflater.finished())
+        {
+          out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+      }
+      finally
+      {
+        deflater.reset();
+      }
+    }
+
+    @Override
+    public byte[] decompress(byte[] compressed)
+    {
+      Codecs codecs = codecs();
+      Inflater inflater = codecs.inflater;
+      try
+      {
+        inflater.setInput(compressed);
+        return inflate(inflater, codecs.chunk, maxDecompressedSize, compressed.length * 4);
+      }
+      catch (DataFormatException e)
+      {
+        throw new CompressionException("Unable to decompress payload", e);
+      }
+      finally
+      {
+        inflater.reset();
+      }
+    }
+  }
+
+  private static class Gzip implements CompressionCodec
+  {
+    private final int maxDecompressedSize;
+
+    private Gzip(int maxDecompressedSize)
+    {
+      this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    @Override
+    public String getAlgorithmName()
+    {
+      return "GZIP";
+    }
+
+    @Override
+    public byte[] compress(byte[] payload)
+    {
+      throw new CompressionException("Only DEF is supported when compressing");
+    }
+
+    @Override
+    public byte[] decompress(byte[] compressed)
+    {
+      Codecs codecs = codecs();
+      Inflater inflater = codecs.gzipInflater;
+      try
+      {
+        int offset = skipHeader(compressed);
+        inflater.setInput(compressed, offset, compressed.length - offset);
+        byte[] payload = inflate(inflater, codecs.chunk, maxDecompressedSize, compressed.length * 4);
+        checkTrailer(compressed, compressed.length - inflater.getRemaining(), payload);
+        return payload;
+      }
+      catch (DataFormatException e)
+      {
+        throw new CompressionException("Unable to decompress payload", e);
+      }
+      finally
+      {
+        inflater.reset();
+      }
+    }
+
+    /**
+     * @return the offset of the compressed data, after the header (RFC 1952).
+     */
+    private static int skipHeader(byte[] gzip)
+    {
+      if (gzip.length < GZIP_HEADER_SIZE + GZIP_TRAILER_SIZE || uint16(gzip, 0) != GZIP_MAGIC
+          || gzip[2] != Deflater.DEFLATED)
+      {
+        throw new CompressionException("Not a GZIP payload");
+      }
+      int flags = gzip[3] & 0xff;
+      int offset = GZIP_HEADER_SIZE;
+      if ((flags & FEXTRA) != 0)
+      {
+        offset += 2 + uint16(gzip, offset);
+      }
+      if ((flags & FNAME) != 0)
+      {
+        offset = skipString(gzip, offset);
+      }
+      if ((flags & FCOMMENT) != 0)
+      {
+        offset = skipString(gzip, offset);
+      }
+      if ((flags & FHCRC) != 0)
+      {
+        offset += 2;
+      }
+      if (offset > gzip.length - GZIP_TRAILER_SIZE)
+      {
+        throw new CompressionException("Compressed payload is truncated");
+      }
+      return offset;
+    }
+
+    private static void checkTrailer(byte[] gzip, int offset, byte[] payload)
+    {
+      if (gzip.length - offset < GZIP_TRAILER_SIZE)
+      {
+        throw new CompressionException("Compressed payload is truncated");
+      }
+      if (gzip.length - offset > GZIP_TRAILER_SIZE)
+      {
+        throw new CompressionException("Only a single GZIP member is supported");
+      }
+      CRC32 crc = new CRC32();
+      crc.update(payload, 0, payload.length);
+      if (uint32(gzip, offset) != crc.getValue() || uint32(gzip, offset + 4) != (payload.length & 0xffffffffL))
+      {
+        throw new CompressionException("Corrupt GZIP payload");
+      }
+    }
+
+    private static int skipString(byte[] gzip, int offset)
+    {
+      int i = offset;
+      while (i < gzip.length && gzip[i] != 0)
+      {
+        i++;
+      }
+      return i + 1;
+    }
+
+    private static int uint16(byte[] b, int offset)
+    {
+      if (offset + 2 > b.length)
+      {
+        throw new CompressionException("Compressed payload is truncated");
+      }
+      return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8;
+    }
+
+    private static long uint32(byte[] b, int offset)
+    {
+      return uint16(b, offset) | (long)uint16(b, offset + 2) << 16;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.adaptris.core.jwt;
+
+import io.jsonwebtoken.io.Decoders;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the header of a compact token without verifying it, so it can be inspected before (or without) any crypto work.
+ */
+final class TokenHeader
+{
+  private TokenHeader()
+  {
+  }
+
+  /**
+   * Decode the header of a token.
+   *
+   * @return the header, or an empty object if it cannot be decoded.
+   */
+  static JSONObject decode(String jwt)
+  {
+    try
+    {
+      int dot = jwt.indexOf('.');
+      if (dot > 0)
+      {
+        return new JSONObject(new String(Decoders.BASE64URL.decode(jwt.substring(0, dot)), StandardCharsets.UTF_8));
+      }
+    }
+    catch (Exception e)
+    {
+      // not a token; there is no header to inspect.
+    }
+    return new JSONObject();
+  }
+}
@@ -0,0 +1,109 @@
+package com.adaptris.core.jwt;
+
+import io.jsonwebtoken.JwsHeader;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phase timings of a single token, as recorded by {@link LatencyTracing}.
+ *
+ * <p>
+ * Only the algorithm, key id and size of the token are kept; never the token itself. A phase that was not reached, or
+ * not timed, is left out.
+ * </p>
+ */
+final class TokenTrace
+{
+  private final long timestamp = System.currentTimeMillis();
+  private final long started;
+  private final int size;
+  private long keyLoaded = -1;
+  private long verified = -1;
+  private long written = -1;
+  private long finished;
+  private String alg;
+  private String kid;
+  private String error;
+
+  TokenTrace(String jwt, long started)
+  {
+    this.started = started;
+    size = jwt != null ? jwt.length() : 0;
+  }
+
+  void keyLoaded()
+  {
+    keyLoaded = System.nanoTime() - started;
+  }
+
+  void verified(Map<String, Object> header)
+  {
+    verified = System.nanoTime() - started;
+    alg = (String)header.get(JwsHeader.ALGORITHM);
+    kid = (String)header.get(JwsHeader.KEY_ID);
+  }
+
+  void written()
+  {
+    written = System.nanoTime() - started;
+  }
+
+  void failed(Exception e)
+  {
+    error = e.getClass().getSimpleName();
+  }
+
+  void finish(long total)
+  {
+    finished = total;
+  }
+
+  /**
+   * Fill in the algorithm and key id from the unverified header when verification did not get that far (or the token was
+   * not sampled); only called for traces that are kept.
+   */
+  TokenTrace describe(String jwt)
+  {
+    if (alg == null && jwt != null)
+    {
+      JSONObject header = TokenHeader.decode(jwt);
+      alg = header.optString(JwsHeader.ALGORITHM, null);
+      kid = header.optString(JwsHeader.KEY_ID, null);
+    }
+    return this;
+  }
+
+  JSONObject toJSON()
+  {
+    JSONObject json = new JSONObject();
+    json.put("time", Instant.ofEpochMilli(timestamp).toString());
+    json.put("alg", alg);
+    json.put("kid", kid);
+    json.put("size", size);
+    json.put("keyMicros", micros(0, keyLoaded));
+    json.put("verifyMicros", micros(keyLoaded, verified));
+    json.put("outputMicros", micros(verified, written));
+    json.put("totalMicros", micros(0, finished));
+    json.put("error", error);
+    return json;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("alg=%s, kid=%s, size=%d, key=%sus, verify=%sus, output=%sus, total=%sus%s", alg, kid, size,
+        micros(0, keyLoaded), micros(keyLoaded, verified), micros(verified, written), micros(0, finished),
+        error != null ? ", error=" + error : "");
+  }
+
+  /**
+   * The time between two phases, or null if either was not reached (or the token was not sampled, so was not timed).
+   */
+  private static Long micros(long from, long to)
+  {
+    return from >= 0 && to >= from ? TimeUnit.NANOSECONDS.toMicros(to - from) : null;
+  }
+}
@@ -0,0 +1,178 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.jwt.clock.TokenClock;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of verified tokens.
+ *
+ * <p>
+ * An entry is kept for at most the time-to-live, and never beyond the expiration time of the token itself, so a cached
+ * token is never returned once it would have failed verification. Tokens are held as {@link ReadOnlyJws} so callers
+ * cannot change what other callers see, and are keyed on the SHA-256 digest of the token rather than the token itself.
+ * The cache is bounded both by the number of tokens and by their total length.
+ * </p>
+ * <p>
+ * Every lookup passes the current version of the keys (see
+ * {@link com.adaptris.core.jwt.secrets.SecretConfigurator#keyVersion()}); when it changes the whole cache is dropped,
+ * so a token signed by a key that has since been revoked or rotated is verified again rather than served from the
+ * cache.
+ * </p>
+ */
+class VerificationCache
+{
+  private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(VerificationCache::sha256);
+
+  private final TokenClock clock;
+  private final int maxEntries;
+  private final long maxSize;
+  private final long ttlMs;
+  private final Map<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+  private long keyVersion;
+
+  VerificationCache(TokenClock clock, int maxEntries, long maxSize, long ttlMs)
+  {
+    this.clock = clock;
+    this.maxEntries = maxEntries;
+    this.maxSize = maxSize;
+    this.ttlMs = ttlMs;
+  }
+
+  Jws<Claims> get(String jwt, long keyVersion)
+  {
+    if (maxEntries <= 0)
+    {
+      return null;
+    }
+    ByteBuffer key = digest(jwt);
+    synchronized (this)
+    {
+      if (keyVersion != this.keyVersion)
+      {
+        return null;
+      }
+      Entry entry = entries.get(key);
+      if (entry == null)
+      {
+        return null;
+      }
+      if (entry.expiresAt <= clock.millis())
+      {
+        remove(key);
+        return null;
+      }
+      return entry.jws;
+    }
+  }
+
+  /**
+   * Cache a token that was verified with the given version of the keys.
+   *
+   * @return the read-only token that was cached, or the token itself if caching is disabled.
+   */
+  Jws<Claims> put(String jwt, Jws<Claims> jws, long keyVersion)
+  {
+    if (maxEntries <= 0 || jwt.length() > maxSize)
+    {
+      return jws;
+    }
+    Jws<Claims> readOnly = ReadOnlyJws.of(jws);
+    long expiresAt = clock.millis() + ttlMs;
+    Date expiration = jws.getBody().getExpiration();
+    if (expiration != null)
+    {
+      expiresAt = Math.min(expiresAt, expiration.getTime());
+    }
+    ByteBuffer key = digest(jwt);
+    synchronized (this)
+    {
+      if (keyVersion != this.keyVersion)
+      {
+        if (keyVersion < this.keyVersion)
+        {
+          // verified with keys that have since changed.
+          return readOnly;
+        }
+        clear();
+        this.keyVersion = keyVersion;
+      }
+      remove(key);
+      entries.put(key, new Entry(readOnly, expiresAt, jwt.length()));
+      size += jwt.length();
+      evict();
+    }
+    return readOnly;
+  }
+
+  synchronized int size()
+  {
+    return entries.size();
+  }
+
+  synchronized void clear()
+  {
+    entries.clear();
+    size = 0;
+  }
+
+  private void remove(ByteBuffer key)
+  {
+    Entry removed = entries.remove(key);
+    if (removed != null)
+    {
+      size -= removed.length;
+    }
+  }
+
+  private void evict()
+  {
+    for (Iterator<Entry> i = entries.values().iterator(); i.hasNext() && (entries.size() > maxEntries || size > maxSize);)
+    {
+      size -= i.next().length;
+      i.remove();
+    }
+  }
+
+  private static ByteBuffer digest(String jwt)
+  {
+    return ByteBuffer.wrap(SHA256.get().digest(jwt.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private static MessageDigest sha256()
+  {
+    try
+    {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      // every JRE supports SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class Entry
+  {
+    private final Jws<Claims> jws;
+    private final long expiresAt;
+    private final int length;
+
+    private Entry(Jws<Claims> jws, long expiresAt, int length)
+    {
+      this.jws = jws;
+      this.expiresAt = expiresAt;
+      this.length = length;
+    }
+  }
+}
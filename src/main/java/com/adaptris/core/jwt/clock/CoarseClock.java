@@ -0,0 +1,113 @@
+package com.adaptris.core.jwt.clock;
+
+import com.adaptris.annotation.InputFieldDefault;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock that is only updated once per resolution (10ms by default), for high rates of token issuance.
+ *
+ * <p>
+ * While the owning component is initialised, a single shared daemon thread updates the time, so reading it is just a
+ * volatile read. Token times have a resolution of one second, so the coarse time never changes the claims by more than
+ * that. Before initialisation, or after closing, the system time is read directly.
+ * </p>
+ *
+ * @config jwt-coarse-clock
+ */
+@XStreamAlias("jwt-coarse-clock")
+public class CoarseClock implements TokenClock
+{
+  private static final int DEFAULT_RESOLUTION_MS = 10;
+
+  /**
+   * How often, in milliseconds, to update the time.
+   */
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "10")
+  private Integer resolutionMs;
+
+  private final transient TokenClock source;
+  private transient volatile long cachedMillis;
+  private transient volatile boolean ticking;
+  private transient ScheduledFuture<?> ticker;
+
+  public CoarseClock()
+  {
+    this(new SystemClock());
+  }
+
+  CoarseClock(TokenClock source)
+  {
+    this.source = source;
+  }
+
+  @Override
+  public synchronized void init()
+  {
+    if (ticker == null)
+    {
+      tick();
+      ticker = Ticker.EXECUTOR.scheduleAtFixedRate(this::tick, resolutionMs(), resolutionMs(), TimeUnit.MILLISECONDS);
+      ticking = true;
+    }
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    ticking = false;
+    if (ticker != null)
+    {
+      ticker.cancel(false);
+      ticker = null;
+    }
+  }
+
+  @Override
+  public long millis()
+  {
+    return ticking ? cachedMillis : source().millis();
+  }
+
+  @Override
+  public Date now()
+  {
+    return new Date(millis());
+  }
+
+  void tick()
+  {
+    cachedMillis = source().millis();
+  }
+
+  int resolutionMs()
+  {
+    return Math.max(1, ObjectUtils.defaultIfNull(resolutionMs, DEFAULT_RESOLUTION_MS));
+  }
+
+  private TokenClock source()
+  {
+    // XStream does not call the constructor.
+    return source != null ? source : Ticker.SYSTEM;
+  }
+
+  private static class Ticker
+  {
+    private static final TokenClock SYSTEM = new SystemClock();
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "JWTCoarseClock");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
@@ -0,0 +1,78 @@
+package com.adaptris.core.jwt.clock;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock that only moves when told to, for deterministic testing of expiry and caching.
+ *
+ * <p>
+ * It starts at {@code start-time} (or the time it was first used) and can be moved with {@link #advance(Duration)} and
+ * {@link #set(Date)}.
+ * </p>
+ *
+ * @config jwt-controllable-clock
+ */
+@XStreamAlias("jwt-controllable-clock")
+public class ControllableClock implements TokenClock
+{
+  @Getter
+  @Setter
+  private Date startTime;
+
+  private transient volatile AtomicLong time;
+
+  public ControllableClock()
+  {
+  }
+
+  public ControllableClock(Date startTime)
+  {
+    this();
+    setStartTime(startTime);
+  }
+
+  @Override
+  public long millis()
+  {
+    return time().get();
+  }
+
+  @Override
+  public Date now()
+  {
+    return new Date(millis());
+  }
+
+  public void set(Date date)
+  {
+    time().set(date.getTime());
+  }
+
+  public void advance(Duration duration)
+  {
+    time().addAndGet(duration.toMillis());
+  }
+
+  private AtomicLong time()
+  {
+    AtomicLong t = time;
+    if (t == null)
+    {
+      synchronized (this)
+      {
+        t = time;
+        if (t == null)
+        {
+          time = t = new AtomicLong(startTime != null ? startTime.getTime() : System.currentTimeMillis());
+        }
+      }
+    }
+    return t;
+  }
+}
@@ -0,0 +1,26 @@
+package com.adaptris.core.jwt.clock;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+import java.util.Date;
+
+/**
+ * Use the system clock; this is the default.
+ *
+ * @config jwt-system-clock
+ */
+@XStreamAlias("jwt-system-clock")
+public class SystemClock implements TokenClock
+{
+  @Override
+  public long millis()
+  {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public Date now()
+  {
+    return new Date(millis());
+  }
+}
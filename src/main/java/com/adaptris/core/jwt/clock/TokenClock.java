@@ -0,0 +1,28 @@
+package com.adaptris.core.jwt.clock;
+
+import io.jsonwebtoken.Clock;
+
+/**
+ * The source of the current time when creating and validating tokens.
+ */
+public interface TokenClock extends Clock
+{
+  /**
+   * Get the current time in milliseconds since the epoch.
+   */
+  long millis();
+
+  /**
+   * Called when the owning component is initialised.
+   */
+  default void init()
+  {
+  }
+
+  /**
+   * Called when the owning component is closed.
+   */
+  default void close()
+  {
+  }
+}
@@ -0,0 +1,29 @@
+package com.adaptris.core.jwt.id;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generate random (version 4) UUIDs from a per-thread random source, which never blocks.
+ *
+ * <p>
+ * The identifiers are unique but not unpredictable, so only use this if the {@code jti} is not relied upon as a secret
+ * nonce.
+ * </p>
+ *
+ * @config jwt-fast-random-id-generator
+ */
+@XStreamAlias("jwt-fast-random-id-generator")
+public class FastRandomIdGenerator implements TokenIdGenerator
+{
+  @Override
+  public String next()
+  {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long msb = random.nextLong() & ~0xF000L | 0x4000L;
+    long lsb = random.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+    return new UUID(msb, lsb).toString();
+  }
+}
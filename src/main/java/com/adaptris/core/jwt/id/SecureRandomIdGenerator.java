@@ -0,0 +1,24 @@
+package com.adaptris.core.jwt.id;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+import java.util.UUID;
+
+/**
+ * Generate random UUIDs from {@link java.security.SecureRandom}; this is the default.
+ *
+ * <p>
+ * All threads share the one secure random source, which can become a point of contention at high issuance rates.
+ * </p>
+ *
+ * @config jwt-secure-random-id-generator
+ */
+@XStreamAlias("jwt-secure-random-id-generator")
+public class SecureRandomIdGenerator implements TokenIdGenerator
+{
+  @Override
+  public String next()
+  {
+    return UUID.randomUUID().toString();
+  }
+}
@@ -0,0 +1,29 @@
+package com.adaptris.core.jwt.id;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generate time ordered (version 7) UUIDs, which sort by the millisecond they were created in.
+ *
+ * <p>
+ * The leading 48 bits are the creation time and the remaining bits come from a per-thread random source, so generation
+ * never blocks; identifiers that are stored or indexed (for replay detection, say) stay close together.
+ * </p>
+ *
+ * @config jwt-time-ordered-id-generator
+ */
+@XStreamAlias("jwt-time-ordered-id-generator")
+public class TimeOrderedIdGenerator implements TokenIdGenerator
+{
+  @Override
+  public String next()
+  {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long msb = System.currentTimeMillis() << 16 | 0x7000L | random.nextInt(0x1000);
+    long lsb = random.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+    return new UUID(msb, lsb).toString();
+  }
+}
@@ -0,0 +1,12 @@
+package com.adaptris.core.jwt.id;
+
+/**
+ * Generates the unique token identifier ({@code jti}) for new tokens.
+ */
+public interface TokenIdGenerator
+{
+  /**
+   * Generate a new identifier.
+   */
+  String next();
+}
@@ -0,0 +1,53 @@
+package com.adaptris.core.jwt.secrets;
+
+import javax.crypto.SecretKey;
+
+/**
+ * An AES key whose material is held in {@link SecretBytes}, and zeroed when the key is destroyed.
+ *
+ * <p>
+ * Each call to {@link #getEncoded()} returns a new copy of the key, which the caller zeroes once the {@code Cipher} has
+ * been initialised; so the only lasting copy is off-heap, and there is none once the key is destroyed.
+ * </p>
+ */
+final class AesSecretKey implements SecretKey
+{
+  private static final long serialVersionUID = 2020121401L;
+
+  private final transient SecretBytes secret;
+
+  AesSecretKey(SecretBytes secret)
+  {
+    this.secret = secret;
+  }
+
+  @Override
+  public String getAlgorithm()
+  {
+    return "AES";
+  }
+
+  @Override
+  public String getFormat()
+  {
+    return "RAW";
+  }
+
+  @Override
+  public byte[] getEncoded()
+  {
+    return secret.bytes();
+  }
+
+  @Override
+  public void destroy()
+  {
+    secret.clear();
+  }
+
+  @Override
+  public boolean isDestroyed()
+  {
+    return secret.isCleared();
+  }
+}
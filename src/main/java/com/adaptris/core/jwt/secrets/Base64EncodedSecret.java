@@ -4,29 +4,123 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtParserBuilder;
 import io.jsonwebtoken.io.Decoders;
-import io.jsonwebtoken.security.Keys;
 import lombok.Getter;
-import lombok.Setter;
 
 import javax.validation.constraints.NotBlank;
+import java.security.Key;
+import java.util.Arrays;
 
 @XStreamAlias("base64-encoded-secret")
 public class Base64EncodedSecret implements SecretConfigurator
 {
   @Getter
-  @Setter
   @NotBlank
   private String secret;
 
+  private transient volatile HmacSecretKey key;
+  private transient volatile AesSecretKey aesKey;
+
+  public void setSecret(String secret)
+  {
+    this.secret = secret;
+    clear();
+  }
+
   @Override
   public JwtBuilder configure(JwtBuilder builder)
   {
-    return builder.signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)));
+    return builder.signWith(key());
   }
 
   @Override
   public JwtParserBuilder configure(JwtParserBuilder builder)
   {
-    return builder.setSigningKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)));
+    return builder.setSigningKey(key());
+  }
+
+  @Override
+  public Key privateKey() throws InvalidSecretException
+  {
+    try
+    {
+      return key();
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  @Override
+  public Key publicKey() throws InvalidSecretException
+  {
+    return privateKey();
+  }
+
+  /**
+   * The secret as an AES key, for direct encryption; it must be 128, 192 or 256 bits.
+   */
+  @Override
+  public Key encryptionKey() throws InvalidSecretException
+  {
+    AesSecretKey k = aesKey;
+    if (k == null)
+    {
+      synchronized (this)
+      {
+        k = aesKey;
+        if (k == null)
+        {
+          byte[] bytes = Decoders.BASE64.decode(secret);
+          if (bytes.length != 16 && bytes.length != 24 && bytes.length != 32)
+          {
+            Arrays.fill(bytes, (byte)0);
+            throw new InvalidSecretException("Secret is " + bytes.length * 8 + " bits, but must be 128, 192 or 256 bits for AES");
+          }
+          aesKey = k = new AesSecretKey(SecretBytes.wrap(bytes));
+        }
+      }
+    }
+    return k;
+  }
+
+  @Override
+  public Key decryptionKey() throws InvalidSecretException
+  {
+    return encryptionKey();
+  }
+
+  @Override
+  public void clear()
+  {
+    HmacSecretKey k = key;
+    key = null;
+    if (k != null)
+    {
+      k.destroy();
+    }
+    AesSecretKey a = aesKey;
+    aesKey = null;
+    if (a != null)
+    {
+      a.destroy();
+    }
+  }
+
+  private HmacSecretKey key()
+  {
+    HmacSecretKey k = key;
+    if (k == null)
+    {
+      synchronized (this)
+      {
+        k = key;
+        if (k == null)
+        {
+          key = k = new HmacSecretKey(SecretBytes.wrap(Decoders.BASE64.decode(secret)));
+        }
+      }
+    }
+    return k;
   }
 }
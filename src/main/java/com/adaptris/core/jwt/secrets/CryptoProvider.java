@@ -0,0 +1,83 @@
+package com.adaptris.core.jwt.secrets;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Provider;
+import java.security.Security;
+
+/**
+ * The JCA provider used to create keys for a secret.
+ *
+ * <p>
+ * jjwt looks up its signature implementation in the JDK's default provider order, so this decides which implementation
+ * of the keys it is given; keys that the signature's provider creates itself are not translated on every use.
+ * {@link #FASTEST} benchmarks signing and verifying through jjwt with each available provider's keys, once when the
+ * service is initialised, and uses the fastest.
+ * </p>
+ */
+public enum CryptoProvider
+{
+  /**
+   * Use the JDK's default provider for the key type.
+   */
+  DEFAULT(null),
+  /**
+   * The JDK's elliptic curve provider.
+   */
+  SUN_EC("SunEC"),
+  /**
+   * The JDK's RSA provider.
+   */
+  SUN_RSA_SIGN("SunRsaSign"),
+  /**
+   * Bouncy Castle.
+   */
+  BOUNCY_CASTLE(BouncyCastleProvider.PROVIDER_NAME),
+  /**
+   * Benchmark the available providers and use the fastest.
+   */
+  FASTEST(null);
+
+  private final String providerName;
+
+  CryptoProvider(String providerName)
+  {
+    this.providerName = providerName;
+  }
+
+  /**
+   * Get the provider, or null if the JDK default should be used.
+   */
+  public Provider provider()
+  {
+    if (this == BOUNCY_CASTLE)
+    {
+      return bouncyCastle();
+    }
+    return providerName != null ? Security.getProvider(providerName) : null;
+  }
+
+  /**
+   * Get the Bouncy Castle provider, registering it (once) if necessary.
+   */
+  public static Provider bouncyCastle()
+  {
+    return BouncyCastle.INSTANCE;
+  }
+
+  private static class BouncyCastle
+  {
+    private static final Provider INSTANCE = register();
+
+    private static Provider register()
+    {
+      Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+      if (provider == null)
+      {
+        provider = new BouncyCastleProvider();
+        Security.addProvider(provider);
+      }
+      return provider;
+    }
+  }
+}
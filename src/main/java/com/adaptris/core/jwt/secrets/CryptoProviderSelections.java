@@ -0,0 +1,77 @@
+package com.adaptris.core.jwt.secrets;
+
+import com.adaptris.core.jwt.ManagedBeans;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.util.Map;
+
+/**
+ * Records the crypto provider chosen by one PGP secret for its key, and publishes it over JMX as
+ * {@code com.adaptris.core.jwt:type=CryptoProviderSelections,id="<key-id>"}.
+ *
+ * <p>
+ * Each secret registers its own bean (with a suffix if another secret has already registered one for the same key), so
+ * two secrets that share a key but use different providers each report their own choice; the bean is unregistered when
+ * the secret is cleared.
+ * </p>
+ */
+final class CryptoProviderSelections implements CryptoProviderSelectionsMBean
+{
+  private static final Logger log = LoggerFactory.getLogger(CryptoProviderSelections.class);
+
+  private static final String TYPE = "CryptoProviderSelections";
+
+  private final String keyId;
+  private final JSONObject selection = new JSONObject();
+
+  private CryptoProviderSelections(String keyId, String provider, Map<String, Long> benchmarkMicros)
+  {
+    this.keyId = keyId;
+    selection.put("selected", provider);
+    if (benchmarkMicros != null)
+    {
+      selection.put("benchmarkMicros", new JSONObject(benchmarkMicros));
+    }
+  }
+
+  /**
+   * Publish the provider chosen for a key.
+   *
+   * @return the name the selection was registered as, or null if it could not be registered.
+   */
+  static ObjectName register(String keyId, String provider, Map<String, Long> benchmarkMicros)
+  {
+    try
+    {
+      CryptoProviderSelections selections = new CryptoProviderSelections(keyId, provider, benchmarkMicros);
+      return ManagedBeans.register(new StandardMBean(selections, CryptoProviderSelectionsMBean.class), TYPE, keyId);
+    }
+    catch (NotCompliantMBeanException e)
+    {
+      log.warn("Could not register crypto provider selection for [{}] with JMX", keyId, e);
+      return null;
+    }
+  }
+
+  static void unregister(ObjectName name)
+  {
+    ManagedBeans.unregister(name);
+  }
+
+  @Override
+  public String dump()
+  {
+    return new JSONObject().put(keyId, selection).toString();
+  }
+
+  @Override
+  public String selectedProvider(String keyId)
+  {
+    return this.keyId.equals(keyId) ? selection.getString("selected") : null;
+  }
+}
@@ -0,0 +1,18 @@
+package com.adaptris.core.jwt.secrets;
+
+/**
+ * Management interface publishing the crypto provider chosen by a PGP secret for its key.
+ */
+public interface CryptoProviderSelectionsMBean
+{
+  /**
+   * The provider chosen for the key id, and the benchmark results where the provider was chosen by benchmark, as a JSON
+   * object.
+   */
+  String dump();
+
+  /**
+   * The provider chosen for the given key id, or null if no provider has been chosen for it.
+   */
+  String selectedProvider(String keyId);
+}
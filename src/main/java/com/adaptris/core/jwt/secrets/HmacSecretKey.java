@@ -0,0 +1,98 @@
+package com.adaptris.core.jwt.secrets;
+
+import io.jsonwebtoken.security.WeakKeyException;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * An HMAC key whose material is held in {@link SecretBytes}, and zeroed when the key is destroyed.
+ *
+ * <p>
+ * The algorithm is chosen from the key length in the same way as {@code Keys.hmacShaKeyFor}.
+ * </p>
+ * <p>
+ * jjwt calls {@link #getEncoded()} several times for every token it signs or verifies: to check the key strength, and
+ * again when the {@code Mac} is initialised. Rather than a new heap copy each time, each thread is handed the same
+ * array, refilled on every call; the JDK {@code Mac} zeroes the array once it has derived its own state, and every
+ * array handed out is zeroed when the key is destroyed. So there is at most one heap copy of the key per thread, and
+ * none once the key is destroyed. The {@code Mac} does keep state derived from the key until it is collected, which
+ * jjwt gives no way to clear.
+ * </p>
+ */
+final class HmacSecretKey implements SecretKey
+{
+  private static final long serialVersionUID = 2020112501L;
+
+  private final String algorithm;
+  private final transient SecretBytes secret;
+  private final transient ThreadLocal<byte[]> encoded;
+  private final transient Set<byte[]> handedOut = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  HmacSecretKey(SecretBytes secret)
+  {
+    int bits = secret.length() * 8;
+    if (bits >= 512)
+    {
+      algorithm = "HmacSHA512";
+    }
+    else if (bits >= 384)
+    {
+      algorithm = "HmacSHA384";
+    }
+    else if (bits >= 256)
+    {
+      algorithm = "HmacSHA256";
+    }
+    else
+    {
+      secret.clear();
+      throw new WeakKeyException("The specified key is " + bits + " bits, which is not secure enough for any HMAC-SHA algorithm");
+    }
+    this.secret = secret;
+    encoded = ThreadLocal.withInitial(() -> {
+      byte[] bytes = new byte[secret.length()];
+      handedOut.add(bytes);
+      return bytes;
+    });
+  }
+
+  @Override
+  public String getAlgorithm()
+  {
+    return algorithm;
+  }
+
+  @Override
+  public String getFormat()
+  {
+    return "RAW";
+  }
+
+  @Override
+  public byte[] getEncoded()
+  {
+    byte[] bytes = encoded.get();
+    secret.copyTo(bytes);
+    return bytes;
+  }
+
+  @Override
+  public void destroy()
+  {
+    secret.clear();
+    synchronized (handedOut)
+    {
+      handedOut.forEach(bytes -> Arrays.fill(bytes, (byte)0));
+    }
+  }
+
+  @Override
+  public boolean isDestroyed()
+  {
+    return secret.isCleared();
+  }
+}
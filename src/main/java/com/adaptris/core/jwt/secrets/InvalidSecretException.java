@@ -6,4 +6,9 @@ public class InvalidSecretException extends Exception
   {
     super(e);
   }
+
+  InvalidSecretException(String message)
+  {
+    super(message);
+  }
 }
@@ -0,0 +1,173 @@
+package com.adaptris.core.jwt.secrets;
+
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.InputFieldDefault;
+import com.adaptris.util.TimeInterval;
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParserBuilder;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.ObjectUtils;
+
+import javax.validation.constraints.NotBlank;
+import java.io.File;
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verify tokens from many issuers (tenants), selecting the key by the issuer or key id of each token.
+ *
+ * <p>
+ * The keys are held in an in-memory index built from a directory of key files, one per tenant, named after the issuer
+ * or key id (e.g. {@code tenant-a.key}). A file contains either a base64 encoded shared secret, or a PEM encoded public
+ * key. The directory is rescanned at most once per {@code refresh-interval}, reloading only the files that have changed;
+ * a single parser is shared by every tenant. This secret can only be used to verify tokens.
+ * </p>
+ *
+ * <pre>{@code
+ *      <secret class="key-directory-secret">
+ *        <directory>/path/to/tenant/keys</directory>
+ *        <key-lookup>ISSUER</key-lookup>
+ *      </secret>
+ * }</pre>
+ */
+@XStreamAlias("key-directory-secret")
+public class KeyDirectorySecret implements SecretConfigurator
+{
+  /**
+   * How to find the key for a token.
+   */
+  public enum KeyLookup
+  {
+    /**
+     * Use the {@code kid} header.
+     */
+    KEY_ID,
+    /**
+     * Use the {@code iss} claim.
+     */
+    ISSUER
+  }
+
+  private static final TimeInterval DEFAULT_REFRESH_INTERVAL = new TimeInterval(1L, TimeUnit.MINUTES);
+
+  @Getter
+  @Setter
+  @NotBlank
+  private String directory;
+
+  @Getter
+  @Setter
+  @InputFieldDefault(value = "KEY_ID")
+  private KeyLookup keyLookup;
+
+  @Getter
+  @Setter
+  @AdvancedConfig
+  private TimeInterval refreshInterval;
+
+  private transient volatile KeyIndex index;
+
+  @Override
+  public JwtBuilder configure(JwtBuilder builder) throws InvalidSecretException
+  {
+    throw new InvalidSecretException("A key directory can only be used to verify tokens");
+  }
+
+  @Override
+  public JwtParserBuilder configure(JwtParserBuilder builder) throws InvalidSecretException
+  {
+    return builder.setSigningKeyResolver(keyResolver());
+  }
+
+  /**
+   * Get a resolver that looks up the key for each token in the index.
+   */
+  @Override
+  public SigningKeyResolver keyResolver() throws InvalidSecretException
+  {
+    try
+    {
+      KeyIndex keys = index();
+      KeyLookup lookup = ObjectUtils.defaultIfNull(keyLookup, KeyLookup.KEY_ID);
+      return new SigningKeyResolverAdapter()
+      {
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims)
+        {
+          String id = lookup == KeyLookup.ISSUER ? claims.getIssuer() : header.getKeyId();
+          Key key = keys.get(id);
+          if (key == null)
+          {
+            throw new SignatureException("No key found for [" + id + "]");
+          }
+          return key;
+        }
+      };
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  @Override
+  public Key privateKey() throws InvalidSecretException
+  {
+    throw new InvalidSecretException("A key directory does not have a single key");
+  }
+
+  @Override
+  public Key publicKey() throws InvalidSecretException
+  {
+    throw new InvalidSecretException("A key directory does not have a single key");
+  }
+
+  @Override
+  public long keyVersion() throws InvalidSecretException
+  {
+    try
+    {
+      return index().version();
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    if (index != null)
+    {
+      index.clear();
+      index = null;
+    }
+  }
+
+  private KeyIndex index()
+  {
+    KeyIndex keys = index;
+    if (keys == null)
+    {
+      synchronized (this)
+      {
+        keys = index;
+        if (keys == null)
+        {
+          keys = new KeyIndex(new File(directory), ObjectUtils.defaultIfNull(refreshInterval, DEFAULT_REFRESH_INTERVAL).toMilliseconds());
+          keys.refresh();
+          index = keys;
+        }
+      }
+    }
+    return keys;
+  }
+}
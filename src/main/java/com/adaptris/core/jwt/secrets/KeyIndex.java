@@ -0,0 +1,239 @@
+package com.adaptris.core.jwt.secrets;
+
+import io.jsonwebtoken.io.Decoders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory index of keys, loaded from a directory of key files.
+ *
+ * <p>
+ * Each file is indexed by its name without the extension; it contains either a base64 encoded shared secret, or a PEM
+ * encoded ({@code -----BEGIN PUBLIC KEY-----}) RSA or EC public key. Refreshing only reloads files that have been
+ * added or modified since the last refresh, and drops keys whose file has been removed. Shared secrets are held
+ * off-heap; keys that are replaced or dropped may still be in use by a verification that started before the refresh,
+ * so they are left for the garbage collector rather than destroyed, and only the current keys are zeroed when the
+ * index is cleared.
+ * </p>
+ * <p>
+ * Once the refresh interval has elapsed, the first lookup to notice rescans the directory while every other lookup
+ * carries on with the current keys; if the directory cannot be read, the current keys are kept until the next interval.
+ * The index has a version that increases with every key added, replaced or removed.
+ * </p>
+ */
+class KeyIndex
+{
+  private static final Logger log = LoggerFactory.getLogger(KeyIndex.class);
+
+  private static final String PEM_PUBLIC_KEY = "-----BEGIN PUBLIC KEY-----";
+
+  private final File directory;
+  private final long refreshIntervalMs;
+  private final Map<String, Entry> keys = new ConcurrentHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile long lastRefresh;
+  private volatile long version;
+
+  KeyIndex(File directory, long refreshIntervalMs)
+  {
+    this.directory = directory;
+    this.refreshIntervalMs = refreshIntervalMs;
+  }
+
+  /**
+   * Get the key for the given identifier, refreshing the index first if the refresh interval has elapsed.
+   *
+   * @return the key or null if there is no such key.
+   */
+  Key get(String id)
+  {
+    refreshIfStale();
+    Entry entry = id != null ? keys.get(id) : null;
+    return entry != null ? entry.key : null;
+  }
+
+  /**
+   * Get the version of the keys, refreshing the index first if the refresh interval has elapsed; the version increases
+   * whenever a key is added, replaced or removed.
+   */
+  long version()
+  {
+    refreshIfStale();
+    return version;
+  }
+
+  int size()
+  {
+    return keys.size();
+  }
+
+  private void refreshIfStale()
+  {
+    if (isStale() && lock.tryLock())
+    {
+      try
+      {
+        if (isStale())
+        {
+          refreshQuietly();
+        }
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Rescan the directory now.
+   *
+   * @throws IllegalStateException if the directory cannot be read.
+   */
+  void refresh()
+  {
+    lock.lock();
+    try
+    {
+      scan();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  void clear()
+  {
+    lock.lock();
+    try
+    {
+      keys.values().forEach(KeyIndex::destroy);
+      keys.clear();
+      lastRefresh = 0;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private boolean isStale()
+  {
+    return System.currentTimeMillis() - lastRefresh >= refreshIntervalMs;
+  }
+
+  private void refreshQuietly()
+  {
+    try
+    {
+      scan();
+    }
+    catch (IllegalStateException e)
+    {
+      log.warn("Keeping the current {} keys until the next refresh", keys.size(), e);
+      lastRefresh = System.currentTimeMillis();
+    }
+  }
+
+  private void scan()
+  {
+    File[] files = directory.listFiles(File::isFile);
+    if (files == null)
+    {
+      throw new IllegalStateException("Cannot list key directory " + directory);
+    }
+    Set<String> seen = new HashSet<>();
+    for (File file : files)
+    {
+      String id = id(file);
+      seen.add(id);
+      Entry existing = keys.get(id);
+      if (existing == null || existing.lastModified != file.lastModified() || existing.length != file.length())
+      {
+        try
+        {
+          keys.put(id, new Entry(load(file), file.lastModified(), file.length()));
+          version++;
+          log.debug("Loaded key [{}] from {}", id, file);
+        }
+        catch (Exception e)
+        {
+          log.warn("Could not load key [{}] from {}", id, file, e);
+        }
+      }
+    }
+    for (Iterator<Map.Entry<String, Entry>> i = keys.entrySet().iterator(); i.hasNext();)
+    {
+      Map.Entry<String, Entry> entry = i.next();
+      if (!seen.contains(entry.getKey()))
+      {
+        i.remove();
+        version++;
+      }
+    }
+    lastRefresh = System.currentTimeMillis();
+  }
+
+  private static void destroy(Entry entry)
+  {
+    if (entry != null && entry.key instanceof HmacSecretKey)
+    {
+      ((HmacSecretKey)entry.key).destroy();
+    }
+  }
+
+  private static String id(File file)
+  {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    return dot > 0 ? name.substring(0, dot) : name;
+  }
+
+  private static Key load(File file) throws Exception
+  {
+    String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim();
+    if (!text.startsWith(PEM_PUBLIC_KEY))
+    {
+      return new HmacSecretKey(SecretBytes.wrap(Decoders.BASE64.decode(text)));
+    }
+    String base64 = text.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+    X509EncodedKeySpec spec = new X509EncodedKeySpec(Decoders.BASE64.decode(base64));
+    try
+    {
+      return KeyFactory.getInstance("RSA").generatePublic(spec);
+    }
+    catch (InvalidKeySpecException e)
+    {
+      return KeyFactory.getInstance("EC").generatePublic(spec);
+    }
+  }
+
+  private static class Entry
+  {
+    private final Key key;
+    private final long lastModified;
+    private final long length;
+
+    private Entry(Key key, long lastModified, long length)
+    {
+      this.key = key;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+  }
+}
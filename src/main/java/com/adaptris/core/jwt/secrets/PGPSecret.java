@@ -1,5 +1,7 @@
 package com.adaptris.core.jwt.secrets;
 
+import com.adaptris.annotation.AdvancedConfig;
+import com.adaptris.annotation.InputFieldDefault;
 import com.adaptris.interlok.resolver.ExternalResolver;
 import com.adaptris.security.exc.PasswordException;
 import com.adaptris.security.password.Password;
@@ -9,7 +11,7 @@ import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtParserBuilder;
 import lombok.Getter;
 import lombok.Setter;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.apache.commons.lang3.ObjectUtils;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
@@ -21,35 +23,60 @@ import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
 import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
 
+import javax.management.ObjectName;
 import javax.validation.constraints.NotBlank;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.Key;
+import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.PublicKey;
+import java.util.Map;
 
 @XStreamAlias("pgp-secret")
 public class PGPSecret implements SecretConfigurator
 {
+  private static final String DEFAULT_PROVIDER = "default";
+
   @Getter
   @Setter
   @NotBlank
   private String path;
 
   @Getter
-  @Setter
   @NotBlank
   private String password;
 
+  /**
+   * The provider used to create the signing keys; defaults to {@link CryptoProvider#BOUNCY_CASTLE}.
+   */
+  @Getter
+  @Setter
+  @AdvancedConfig
+  @InputFieldDefault(value = "BOUNCY_CASTLE")
+  private CryptoProvider provider;
+
+  private transient volatile Provider selectedProvider;
+  private transient volatile Map<String, Long> benchmarkMicros;
+  private transient ObjectName selectionName;
+  private transient volatile SecretBytes decodedPassword;
+
+  public void setPassword(String password)
+  {
+    this.password = password;
+    clear();
+  }
+
   @Override
   public JwtBuilder configure(JwtBuilder builder) throws InvalidSecretException
   {
     try
     {
       PGPSecretKey pgpSecretKey = readSecretKey();
-      String keyId = Long.toString(pgpSecretKey.getKeyID());
+      String keyId = keyId(pgpSecretKey);
       Key key = decodePrivateKey(pgpSecretKey);
       builder.setHeaderParam(JwsHeader.KEY_ID, keyId);
       builder.signWith(key);
@@ -76,22 +103,182 @@ public class PGPSecret implements SecretConfigurator
     }
   }
 
-  private PrivateKey decodePrivateKey(PGPSecretKey pgpSecretKey) throws PasswordException, PGPException
+  @Override
+  public Key privateKey() throws InvalidSecretException
   {
-    String p = Password.decode(ExternalResolver.resolve(password));
-    PBESecretKeyDecryptor decryptorFactory = new JcePBESecretKeyDecryptorBuilder().setProvider(PROVIDER).build(p.toCharArray());
-    PGPPrivateKey pgpPrivateKey = pgpSecretKey.extractPrivateKey(decryptorFactory);
-    JcaPGPKeyConverter converter = new JcaPGPKeyConverter();
-    converter.setProvider(new BouncyCastleProvider());
-    return converter.getPrivateKey(pgpPrivateKey);
+    try
+    {
+      return decodePrivateKey(readSecretKey());
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  @Override
+  public Key publicKey() throws InvalidSecretException
+  {
+    try
+    {
+      return decodePublicKey(readSecretKey());
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  @Override
+  public String keyId() throws InvalidSecretException
+  {
+    try
+    {
+      return keyId(readSecretKey());
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    SecretBytes p = decodedPassword;
+    decodedPassword = null;
+    if (p != null)
+    {
+      p.clear();
+    }
+    synchronized (this)
+    {
+      CryptoProviderSelections.unregister(selectionName);
+      selectionName = null;
+    }
+  }
+
+  /**
+   * Check that the configured provider can handle the key, and if it is {@link CryptoProvider#FASTEST}, benchmark the
+   * candidates now rather than on first use; the choice is published over JMX until the secret is cleared, see
+   * {@link CryptoProviderSelectionsMBean}.
+   */
+  @Override
+  public void init() throws InvalidSecretException
+  {
+    try
+    {
+      PGPSecretKey pgpSecretKey = readSecretKey();
+      Provider p = selectProvider(pgpSecretKey);
+      if (p != null)
+      {
+        String algorithm = converter(null).getPublicKey(pgpSecretKey.getPublicKey()).getAlgorithm();
+        if (p.getService("KeyFactory", algorithm) == null)
+        {
+          throw new InvalidSecretException("Provider [" + p.getName() + "] cannot create " + algorithm + " keys");
+        }
+      }
+      boolean benchmarked = ObjectUtils.defaultIfNull(provider, CryptoProvider.BOUNCY_CASTLE) == CryptoProvider.FASTEST;
+      synchronized (this)
+      {
+        CryptoProviderSelections.unregister(selectionName);
+        selectionName = CryptoProviderSelections.register(keyId(pgpSecretKey), p != null ? p.getName() : DEFAULT_PROVIDER, benchmarked ? benchmarkMicros : null);
+      }
+    }
+    catch (InvalidSecretException e)
+    {
+      throw e;
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  /**
+   * Get the name of the provider used to create keys, benchmarking the candidates if necessary.
+   */
+  public String selectedProvider() throws InvalidSecretException
+  {
+    try
+    {
+      Provider p = selectProvider(readSecretKey());
+      return p != null ? p.getName() : DEFAULT_PROVIDER;
+    }
+    catch (Exception e)
+    {
+      throw new InvalidSecretException(e);
+    }
+  }
+
+  private PrivateKey decodePrivateKey(PGPSecretKey pgpSecretKey) throws Exception
+  {
+    return converter(selectProvider(pgpSecretKey)).getPrivateKey(extractPrivateKey(pgpSecretKey));
   }
 
-  private PublicKey decodePublicKey(PGPSecretKey pgpSecretKey) throws PGPException
+  private PublicKey decodePublicKey(PGPSecretKey pgpSecretKey) throws Exception
+  {
+    return converter(selectProvider(pgpSecretKey)).getPublicKey(pgpSecretKey.getPublicKey());
+  }
+
+  private PGPPrivateKey extractPrivateKey(PGPSecretKey pgpSecretKey) throws Exception
+  {
+    // the decryptor holds on to the passphrase, so must be used before the passphrase is zeroed.
+    return decodedPassword().withChars(p -> {
+      PBESecretKeyDecryptor decryptorFactory = new JcePBESecretKeyDecryptorBuilder().setProvider(CryptoProvider.bouncyCastle()).build(p);
+      return pgpSecretKey.extractPrivateKey(decryptorFactory);
+    });
+  }
+
+  private synchronized SecretBytes decodedPassword() throws PasswordException
+  {
+    if (decodedPassword == null)
+    {
+      decodedPassword = SecretBytes.wrap(Password.decode(ExternalResolver.resolve(password)).toCharArray());
+    }
+    return decodedPassword;
+  }
+
+  private Provider selectProvider(PGPSecretKey pgpSecretKey) throws Exception
+  {
+    CryptoProvider configured = ObjectUtils.defaultIfNull(provider, CryptoProvider.BOUNCY_CASTLE);
+    if (configured != CryptoProvider.FASTEST)
+    {
+      return configured.provider();
+    }
+    if (selectedProvider == null)
+    {
+      synchronized (this)
+      {
+        if (selectedProvider == null)
+        {
+          PGPPrivateKey pgpPrivateKey = extractPrivateKey(pgpSecretKey);
+          PGPPublicKey pgpPublicKey = pgpSecretKey.getPublicKey();
+          ProviderBenchmark.Result result = ProviderBenchmark.fastest(p -> {
+            JcaPGPKeyConverter converter = converter(p);
+            return new KeyPair(converter.getPublicKey(pgpPublicKey), converter.getPrivateKey(pgpPrivateKey));
+          });
+          benchmarkMicros = result.micros;
+          selectedProvider = result.provider;
+        }
+      }
+    }
+    return selectedProvider;
+  }
+
+  private static String keyId(PGPSecretKey pgpSecretKey)
+  {
+    return Long.toString(pgpSecretKey.getKeyID());
+  }
+
+  private static JcaPGPKeyConverter converter(Provider provider)
   {
-    PGPPublicKey pgpPublicKey = pgpSecretKey.getPublicKey();
     JcaPGPKeyConverter converter = new JcaPGPKeyConverter();
-    converter.setProvider(new BouncyCastleProvider());
-    return converter.getPublicKey(pgpPublicKey);
+    if (provider != null)
+    {
+      converter.setProvider(provider);
+    }
+    return converter;
   }
 
   private PGPSecretKey readSecretKey() throws IOException, PGPException
@@ -0,0 +1,116 @@
+package com.adaptris.core.jwt.secrets;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
+import java.security.Provider;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the provider whose keys sign and verify fastest.
+ *
+ * <p>
+ * jjwt always looks up its {@code Signature} in the JDK's default provider order, so the provider only decides which
+ * implementation of the keys is handed to it; a provider's own keys avoid being translated on every use. Each candidate
+ * is therefore timed by signing and verifying a token through jjwt itself, exactly as the services do.
+ * </p>
+ */
+final class ProviderBenchmark
+{
+  private static final Logger log = LoggerFactory.getLogger(ProviderBenchmark.class);
+
+  private static final int WARM_UP = 10;
+  private static final int ITERATIONS = 25;
+
+  @FunctionalInterface
+  interface KeyConverter
+  {
+    KeyPair convert(Provider provider) throws Exception;
+  }
+
+  static final class Result
+  {
+    final Provider provider;
+    final Map<String, Long> micros;
+
+    private Result(Provider provider, Map<String, Long> micros)
+    {
+      this.provider = provider;
+      this.micros = micros;
+    }
+  }
+
+  private ProviderBenchmark()
+  {
+  }
+
+  static List<Provider> candidates()
+  {
+    return Arrays.asList(CryptoProvider.SUN_RSA_SIGN, CryptoProvider.SUN_EC, CryptoProvider.BOUNCY_CASTLE).stream()
+        .map(CryptoProvider::provider).filter(Objects::nonNull).collect(Collectors.toList());
+  }
+
+  /**
+   * Time signing and verifying with the keys from each candidate, returning the fastest; falls back to Bouncy Castle if
+   * none of them can handle the key.
+   */
+  static Result fastest(KeyConverter converter)
+  {
+    Provider fastest = null;
+    long best = Long.MAX_VALUE;
+    Map<String, Long> micros = new LinkedHashMap<>();
+    for (Provider provider : candidates())
+    {
+      try
+      {
+        long elapsed = time(converter.convert(provider));
+        micros.put(provider.getName(), TimeUnit.NANOSECONDS.toMicros(elapsed / ITERATIONS));
+        log.debug("Keys from provider [{}] took {}us per sign/verify", provider.getName(), micros.get(provider.getName()));
+        if (elapsed < best)
+        {
+          best = elapsed;
+          fastest = provider;
+        }
+      }
+      catch (Exception e)
+      {
+        log.trace("Provider [{}] cannot be used: {}", provider.getName(), e.getMessage());
+      }
+    }
+    if (fastest == null)
+    {
+      fastest = CryptoProvider.bouncyCastle();
+    }
+    log.info("Selected crypto provider [{}]", fastest.getName());
+    return new Result(fastest, micros);
+  }
+
+  private static long time(KeyPair keys)
+  {
+    JwtParser parser = Jwts.parserBuilder().setSigningKey(keys.getPublic()).build();
+    for (int i = 0; i < WARM_UP; i++)
+    {
+      signAndVerify(parser, keys);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      signAndVerify(parser, keys);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void signAndVerify(JwtParser parser, KeyPair keys)
+  {
+    parser.parseClaimsJws(Jwts.builder().setSubject("benchmark").signWith(keys.getPrivate()).compact());
+  }
+}
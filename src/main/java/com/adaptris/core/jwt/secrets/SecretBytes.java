@@ -0,0 +1,135 @@
+package com.adaptris.core.jwt.secrets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Holds secret material off-heap, in a direct buffer, until it is cleared.
+ *
+ * <p>
+ * The source array is zeroed when the material is wrapped, and the temporary copies handed to
+ * {@link #withBytes(BytesFunction)} and {@link #withChars(CharsFunction)} are zeroed as soon as the function returns; so
+ * the secret does not linger on the heap to be copied by the garbage collector or captured in a heap dump.
+ * </p>
+ */
+final class SecretBytes
+{
+  @FunctionalInterface
+  interface BytesFunction<T>
+  {
+    T apply(byte[] bytes) throws Exception;
+  }
+
+  @FunctionalInterface
+  interface CharsFunction<T>
+  {
+    T apply(char[] chars) throws Exception;
+  }
+
+  private final ByteBuffer buffer;
+  private final int length;
+  private volatile boolean cleared;
+
+  private SecretBytes(int length)
+  {
+    this.length = length;
+    buffer = ByteBuffer.allocateDirect(length);
+  }
+
+  /**
+   * Copy the bytes off-heap, and zero the source.
+   */
+  static SecretBytes wrap(byte[] bytes)
+  {
+    SecretBytes secret = new SecretBytes(bytes.length);
+    secret.buffer.duplicate().put(bytes);
+    Arrays.fill(bytes, (byte)0);
+    return secret;
+  }
+
+  /**
+   * Copy the characters off-heap, and zero the source.
+   */
+  static SecretBytes wrap(char[] chars)
+  {
+    SecretBytes secret = new SecretBytes(chars.length * 2);
+    secret.buffer.duplicate().asCharBuffer().put(chars);
+    Arrays.fill(chars, '\0');
+    return secret;
+  }
+
+  <T> T withBytes(BytesFunction<T> function) throws Exception
+  {
+    byte[] copy = bytes();
+    try
+    {
+      return function.apply(copy);
+    }
+    finally
+    {
+      Arrays.fill(copy, (byte)0);
+    }
+  }
+
+  <T> T withChars(CharsFunction<T> function) throws Exception
+  {
+    assertNotCleared();
+    char[] copy = new char[length / 2];
+    buffer.duplicate().asCharBuffer().get(copy);
+    try
+    {
+      return function.apply(copy);
+    }
+    finally
+    {
+      Arrays.fill(copy, '\0');
+    }
+  }
+
+  /**
+   * Get a copy of the bytes; the caller is responsible for zeroing it.
+   */
+  byte[] bytes()
+  {
+    assertNotCleared();
+    byte[] copy = new byte[length];
+    buffer.duplicate().get(copy);
+    return copy;
+  }
+
+  /**
+   * Copy the bytes into an existing array, of at least {@link #length()} bytes.
+   */
+  void copyTo(byte[] target)
+  {
+    assertNotCleared();
+    buffer.duplicate().get(target, 0, length);
+  }
+
+  int length()
+  {
+    return length;
+  }
+
+  boolean isCleared()
+  {
+    return cleared;
+  }
+
+  void clear()
+  {
+    cleared = true;
+    for (int i = 0; i < length; i++)
+    {
+      buffer.put(i, (byte)0);
+    }
+  }
+
+  private void assertNotCleared()
+  {
+    if (cleared)
+    {
+      throw new IllegalStateException("Secret has been cleared");
+    }
+  }
+}
@@ -2,12 +2,80 @@ package com.adaptris.core.jwt.secrets;
 
 import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.JwtParserBuilder;
+import io.jsonwebtoken.SigningKeyResolver;
+
+import java.security.Key;
 
 public interface SecretConfigurator
 {
-  String PROVIDER = "BC";
-
   JwtBuilder configure(JwtBuilder builder) throws InvalidSecretException;
 
   JwtParserBuilder configure(JwtParserBuilder builder) throws InvalidSecretException;
+
+  /**
+   * Get the key used to sign (or decrypt) a token; for a shared secret this is the same as {@link #publicKey()}.
+   */
+  Key privateKey() throws InvalidSecretException;
+
+  /**
+   * Get the key used to verify (or encrypt) a token; for a shared secret this is the same as {@link #privateKey()}.
+   */
+  Key publicKey() throws InvalidSecretException;
+
+  /**
+   * Get the resolver that chooses the verification key for each token, for a secret that does not have a single key (a
+   * key directory, for example); null if tokens are verified with {@link #publicKey()}.
+   */
+  default SigningKeyResolver keyResolver() throws InvalidSecretException
+  {
+    return null;
+  }
+
+  /**
+   * Get the key used to encrypt a token, if it differs from {@link #publicKey()}; a shared secret is used directly as
+   * an AES key, rather than an HMAC key.
+   */
+  default Key encryptionKey() throws InvalidSecretException
+  {
+    return publicKey();
+  }
+
+  /**
+   * Get the key used to decrypt a token, if it differs from {@link #privateKey()}.
+   */
+  default Key decryptionKey() throws InvalidSecretException
+  {
+    return privateKey();
+  }
+
+  /**
+   * Get the key id to add to the header of signed tokens, if any.
+   */
+  default String keyId() throws InvalidSecretException
+  {
+    return null;
+  }
+
+  /**
+   * A number that increases whenever the keys change (other than by {@link #clear()}), so that anything verified with
+   * the previous keys can be discarded; the keys of most secrets never change, so this defaults to 0.
+   */
+  default long keyVersion() throws InvalidSecretException
+  {
+    return 0;
+  }
+
+  /**
+   * Called when the owning component is initialised, to check the configuration and do any one-off work up front.
+   */
+  default void init() throws InvalidSecretException
+  {
+  }
+
+  /**
+   * Zero any secret material held by this secret; it will be loaded again on next use.
+   */
+  default void clear()
+  {
+  }
 }
@@ -0,0 +1,127 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.ServiceException;
+import com.adaptris.core.common.StringPayloadDataInputParameter;
+import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JWTBatchVerifierTest extends JWTCommonTest
+{
+  @Test
+  public void testVerifyBatch() throws Exception
+  {
+    JWTBatchVerifier service = (JWTBatchVerifier)retrieveObjectForSampleConfig();
+    AdaptrisMessage message = message();
+    String tampered = JWT.substring(0, JWT.length() - 4) + "AAAA";
+    message.setContent(new JSONArray().put(JWT).put("not-a-token").put(tampered).put(JWT).toString(), message.getContentEncoding());
+
+    execute(service, message);
+
+    JSONArray results = new JSONArray(message.getContent());
+    assertEquals(4, results.length());
+    assertTrue(results.getJSONObject(0).getBoolean("valid"));
+    assertEquals(CLAIMS.get("jti"), results.getJSONObject(0).getJSONObject("claims").get("jti"));
+    assertEquals("HS512", results.getJSONObject(0).getJSONObject("header").get("alg"));
+    assertFalse(results.getJSONObject(1).getBoolean("valid"));
+    assertTrue(results.getJSONObject(1).has("error"));
+    assertFalse(results.getJSONObject(2).getBoolean("valid"));
+    assertTrue(results.getJSONObject(3).getBoolean("valid"));
+  }
+
+  @Test
+  public void testVerifyBatchObject() throws Exception
+  {
+    JWTBatchVerifier service = (JWTBatchVerifier)retrieveObjectForSampleConfig();
+    AdaptrisMessage message = message();
+    message.setContent(new JSONObject().put("tokens", new JSONArray().put(JWT)).toString(), message.getContentEncoding());
+
+    execute(service, message);
+
+    JSONArray results = new JSONArray(message.getContent());
+    assertEquals(1, results.length());
+    assertTrue(results.getJSONObject(0).getBoolean("valid"));
+  }
+
+  @Test
+  public void testVerifyBatchNotStrings() throws Exception
+  {
+    JWTBatchVerifier service = (JWTBatchVerifier)retrieveObjectForSampleConfig();
+    AdaptrisMessage message = message();
+    message.setContent(new JSONArray().put(42).put(new JSONObject().put("jwt", JWT)).put(JSONObject.NULL).put(JWT).toString(), message.getContentEncoding());
+
+    execute(service, message);
+
+    JSONArray results = new JSONArray(message.getContent());
+    assertEquals(4, results.length());
+    assertFalse(results.getJSONObject(0).getBoolean("valid"));
+    assertTrue(results.getJSONObject(0).getString("error").startsWith("Not a token"));
+    assertFalse(results.getJSONObject(1).getBoolean("valid"));
+    assertFalse(results.getJSONObject(2).getBoolean("valid"));
+    assertTrue(results.getJSONObject(3).getBoolean("valid"));
+  }
+
+  @Test
+  public void testVerifyBatchTooLarge() throws Exception
+  {
+    try
+    {
+      JWTBatchVerifier service = (JWTBatchVerifier)retrieveObjectForSampleConfig();
+      service.setMaxBatchSize(2);
+      AdaptrisMessage message = message();
+      message.setContent(new JSONArray().put(JWT).put(JWT).put(JWT).toString(), message.getContentEncoding());
+
+      execute(service, message);
+
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      // the tokens are valid, so the only failure is the batch size
+      assertTrue(e.getCause() instanceof ServiceException);
+      assertEquals("Batch of 3 tokens exceeds the maximum of 2", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testNotJson() throws Exception
+  {
+    try
+    {
+      JWTBatchVerifier service = (JWTBatchVerifier)retrieveObjectForSampleConfig();
+      AdaptrisMessage message = message();
+      message.setContent(JWT, message.getContentEncoding());
+
+      execute(service, message);
+
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      assertTrue(e.getCause() instanceof JSONException);
+    }
+  }
+
+  @Override
+  protected Object retrieveObjectForSampleConfig()
+  {
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    JWTVerifierConnection connection = new JWTVerifierConnection();
+    connection.setSecret(secret);
+    JWTBatchVerifier service = new JWTBatchVerifier();
+    service.setConnection(connection);
+    service.setTokens(new StringPayloadDataInputParameter());
+    service.setResults(new StringPayloadDataOutputParameter());
+    return service;
+  }
+}
@@ -0,0 +1,225 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.DefaultMessageFactory;
+import com.adaptris.core.common.ConstantDataInputParameter;
+import com.adaptris.core.common.MetadataDataOutputParameter;
+import com.adaptris.core.common.StringPayloadDataInputParameter;
+import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import com.adaptris.core.jwt.secrets.PGPSecret;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.KeyValuePair;
+import com.adaptris.util.KeyValuePairSet;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.adaptris.core.jwt.JWTCommonTest.CLAIMS;
+import static com.adaptris.core.jwt.JWTCommonTest.HEADER;
+import static com.adaptris.core.jwt.JWTCommonTest.JWT;
+import static com.adaptris.core.jwt.JWTCommonTest.KEY;
+import static com.adaptris.core.jwt.JWTCommonTest.PASSPHRASE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Soak test that runs shared service instances from many threads, as a pooled workflow would.
+ *
+ * <p>
+ * Every token is checked for correctness, and the throughput for 1 to N threads is logged. This is not an example
+ * config test, so it does not add to the generated documentation.
+ * </p>
+ */
+public class JWTConcurrencyTest
+{
+  private static final Logger log = LoggerFactory.getLogger(JWTConcurrencyTest.class);
+
+  private static final int MAX_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  private String pgpPath;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    pgpPath = JWTCommonTest.writeTempFile(getClass(), JWTCommonTest.generatePGPKey().getEncoded());
+  }
+
+  @Test
+  public void testSharedSecret() throws Exception
+  {
+    soak("base64-encoded-secret", 200, sharedSecret());
+  }
+
+  @Test
+  public void testPGPSecret() throws Exception
+  {
+    soak("pgp-secret", 10, getPGPSecret());
+  }
+
+  @Test
+  public void testEncoder() throws Exception
+  {
+    JWTEncoder encoder = new JWTEncoder();
+    encoder.setSecret(sharedSecret());
+    encoder.setHeader(new ConstantDataInputParameter(HEADER.toString()));
+    encoder.setClaims(new ConstantDataInputParameter(CLAIMS.toString()));
+    encoder.setJwtOutput(new StringPayloadDataOutputParameter());
+    JWTDecoder decoder = decoder(sharedSecret());
+    try
+    {
+      LifecycleHelper.initAndStart(encoder);
+      LifecycleHelper.initAndStart(decoder);
+      for (int threads = 1; threads <= MAX_THREADS; threads *= 2)
+      {
+        run("jwt-encode", threads, 200, n -> {
+          AdaptrisMessage message = message();
+          encoder.doService(message);
+          assertEquals(JWT, message.getContent());
+          decoder.doService(message);
+          assertEquals(CLAIMS.get("jti"), new JSONObject(message.getContent()).get("jti"));
+        });
+      }
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(encoder);
+      LifecycleHelper.stopAndClose(decoder);
+    }
+  }
+
+  private void soak(String name, int iterations, SecretConfigurator secret) throws Exception
+  {
+    JWTCreator creator = creator(secret);
+    JWTDecoder decoder = decoder(secret);
+    try
+    {
+      LifecycleHelper.initAndStart(creator);
+      LifecycleHelper.initAndStart(decoder);
+      for (int threads = 1; threads <= MAX_THREADS; threads *= 2)
+      {
+        run(name, threads, iterations, n -> {
+          AdaptrisMessage message = message();
+          message.addMetadata("n", n);
+          creator.doService(message);
+          decoder.doService(message);
+          JSONObject claims = new JSONObject(message.getContent());
+          assertEquals(n, claims.getString("n"));
+          assertEquals("Bob", claims.getString("sub"));
+        });
+      }
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(creator);
+      LifecycleHelper.stopAndClose(decoder);
+    }
+  }
+
+  private static void run(String name, int threads, int iterations, Task task) throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger completed = new AtomicInteger();
+    Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    List<Runnable> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++)
+    {
+      int thread = t;
+      workers.add(() -> {
+        try
+        {
+          start.await();
+          for (int i = 0; i < iterations; i++)
+          {
+            task.run(thread + "-" + i);
+            completed.incrementAndGet();
+          }
+        }
+        catch (Throwable e)
+        {
+          failures.add(e);
+        }
+      });
+    }
+    workers.forEach(executor::execute);
+    long begin = System.nanoTime();
+    start.countDown();
+    executor.shutdown();
+    assertTrue(name + " did not complete", executor.awaitTermination(5, TimeUnit.MINUTES));
+    long elapsed = System.nanoTime() - begin;
+
+    if (!failures.isEmpty())
+    {
+      throw new AssertionError(name + " failed with " + threads + " threads", failures.peek());
+    }
+    assertEquals(threads * iterations, completed.get());
+    log.info("{}: {} threads, {} tokens/s", name, threads, (long)(completed.get() / (elapsed / 1_000_000_000d)));
+  }
+
+  @FunctionalInterface
+  private interface Task
+  {
+    void run(String n) throws Exception;
+  }
+
+  private Base64EncodedSecret sharedSecret()
+  {
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    return secret;
+  }
+
+  private JWTCreator creator(SecretConfigurator secret)
+  {
+    JWTCreator creator = new JWTCreator();
+    creator.setIssuer("me");
+    creator.setSubject("Bob");
+    creator.setAudience("you");
+    creator.setExpiresIn("5m");
+    creator.setSecret(secret);
+    KeyValuePairSet claims = new KeyValuePairSet();
+    claims.addKeyValuePair(new KeyValuePair("n", "%message{n}"));
+    creator.setCustomClaims(claims);
+    return creator;
+  }
+
+  private JWTDecoder decoder(SecretConfigurator secret)
+  {
+    JWTDecoder decoder = new JWTDecoder();
+    decoder.setJwtString(new StringPayloadDataInputParameter());
+    decoder.setSecret(secret);
+    decoder.setHeader(new MetadataDataOutputParameter("header"));
+    decoder.setClaims(new StringPayloadDataOutputParameter());
+    return decoder;
+  }
+
+  private PGPSecret getPGPSecret()
+  {
+    PGPSecret pgpSecret = new PGPSecret();
+    pgpSecret.setPath(pgpPath);
+    pgpSecret.setPassword(PASSPHRASE);
+    return pgpSecret;
+  }
+
+  private static AdaptrisMessage message()
+  {
+    AdaptrisMessage message = DefaultMessageFactory.getDefaultInstance().newMessage();
+    message.setContentEncoding(Charset.defaultCharset().name());
+    return message;
+  }
+}
@@ -1,22 +1,41 @@
 package com.adaptris.core.jwt;
 
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.common.MetadataDataOutputParameter;
 import com.adaptris.core.common.StringPayloadDataInputParameter;
 import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.jwt.clock.ControllableClock;
+import com.adaptris.core.jwt.id.FastRandomIdGenerator;
+import com.adaptris.core.jwt.id.TimeOrderedIdGenerator;
 import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import com.adaptris.core.jwt.secrets.CryptoProvider;
 import com.adaptris.core.jwt.secrets.PGPSecret;
+import com.adaptris.core.util.LifecycleHelper;
 import com.adaptris.util.KeyValuePair;
 import com.adaptris.util.KeyValuePairSet;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
 import lombok.SneakyThrows;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -36,11 +55,31 @@ public class JWTCreatorTest extends JWTCommonTest
 
     AdaptrisMessage message = message();
 
-    service.doService(message);
+    execute(service, message);
 
     assertEquals(JWT, message.getContent());
   }
 
+  @Test
+  public void testCreateKeyLoading() throws Exception
+  {
+    for (KeyLoading keyLoading : KeyLoading.values())
+    {
+      JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+      service.setId("4f044322-5db3-44d2-a698-15b754bd7a05");
+      service.setIssuedAt(PARSER.parse("2020-01-01"));
+      Base64EncodedSecret secret = new Base64EncodedSecret();
+      secret.setSecret(KEY);
+      service.setSecret(secret);
+      service.setKeyLoading(keyLoading);
+      AdaptrisMessage message = message();
+
+      execute(service, message);
+
+      assertEquals(JWT, message.getContent());
+    }
+  }
+
   @Test
   public void testCreateClaims() throws Exception
   {
@@ -55,7 +94,7 @@ public class JWTCreatorTest extends JWTCommonTest
     AdaptrisMessage message = message();
     message.setContent("resolved value", message.getContentEncoding());
 
-    service.doService(message);
+    execute(service, message);
 
     JWTDecoder decoder = new JWTDecoder();
     decoder.setJwtString(new StringPayloadDataInputParameter());
@@ -63,7 +102,7 @@ public class JWTCreatorTest extends JWTCommonTest
     decoder.setHeader(new MetadataDataOutputParameter("header"));
     decoder.setClaims(new StringPayloadDataOutputParameter());
 
-    decoder.doService(message);
+    execute(decoder, message);
 
     JSONObject json = new JSONObject(message.getContent());
 
@@ -79,6 +118,234 @@ public class JWTCreatorTest extends JWTCommonTest
     assertEquals("resolved value", json.getString("custom-claim-3"));
   }
 
+  @Test
+  public void testCreateRelativeTimes() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    service.setExpiresIn("5m");
+    service.setNotBeforeSkew("-30s");
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    service.setSecret(secret);
+
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    Claims claims = parse(message.getContent());
+    assertEquals(300_000L, claims.getExpiration().getTime() - claims.getIssuedAt().getTime());
+    assertEquals(-30_000L, claims.getNotBefore().getTime() - claims.getIssuedAt().getTime());
+  }
+
+  @Test
+  public void testCreateRelativeTimesExpression() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    service.setExpiresIn("%message{ttl}");
+    service.setNotBefore(null);
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    service.setSecret(secret);
+
+    AdaptrisMessage message = message();
+    message.addMetadata("ttl", "PT1H");
+
+    execute(service, message);
+
+    Claims claims = parse(message.getContent());
+    assertEquals(3_600_000L, claims.getExpiration().getTime() - claims.getIssuedAt().getTime());
+    assertNull(claims.getNotBefore());
+  }
+
+  @Test
+  public void testCreateInvalidRelativeTime() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    service.setSecret(secret);
+    service.setExpiresIn("five minutes");
+    try
+    {
+      execute(service, message());
+
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      // the secret is valid, so the only failure is the relative time
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+      assertEquals("Invalid duration [five minutes]", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testCreateWithProvider() throws Exception
+  {
+    boolean rsa = "RSA".equals(getPGPSecret().publicKey().getAlgorithm());
+    CryptoProvider matching = rsa ? CryptoProvider.SUN_RSA_SIGN : CryptoProvider.SUN_EC;
+    for (CryptoProvider provider : new CryptoProvider[] { CryptoProvider.DEFAULT, matching, CryptoProvider.BOUNCY_CASTLE })
+    {
+      PGPSecret secret = secretWithProvider(provider);
+
+      List<String> published = createWithProvider(secret);
+
+      String expected = provider.provider() != null ? provider.provider().getName() : "default";
+      assertEquals(expected, secret.selectedProvider());
+      assertEquals(Collections.singletonList(expected), published);
+    }
+    assertTrue(secretWithProvider(matching).privateKey().getClass().getName().startsWith("sun.security"));
+    assertTrue(getPGPSecret().privateKey().getClass().getName().startsWith("org.bouncycastle"));
+  }
+
+  @Test
+  public void testCreateWithFastestProvider() throws Exception
+  {
+    PGPSecret secret = secretWithProvider(CryptoProvider.FASTEST);
+
+    List<String> published = createWithProvider(secret);
+
+    String selected = secret.selectedProvider();
+    assertTrue(selected, Arrays.asList("SunRsaSign", "SunEC", "BC").contains(selected));
+    assertEquals(Collections.singletonList(selected), published);
+  }
+
+  @Test
+  public void testCreateWithProvidersSharingKey() throws Exception
+  {
+    PGPSecret secret = secretWithProvider(CryptoProvider.DEFAULT);
+    JWTCreator first = (JWTCreator)retrieveObjectForSampleConfig();
+    first.setSecret(secret);
+    JWTCreator second = (JWTCreator)retrieveObjectForSampleConfig();
+    second.setSecret(secretWithProvider(CryptoProvider.BOUNCY_CASTLE));
+    try
+    {
+      LifecycleHelper.initAndStart(first);
+      LifecycleHelper.initAndStart(second);
+
+      List<String> published = selectedProviders(secret.keyId());
+      Collections.sort(published);
+      assertEquals(Arrays.asList("BC", "default"), published);
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(first);
+      LifecycleHelper.stopAndClose(second);
+    }
+    assertEquals(Collections.emptyList(), selectedProviders(secret.keyId()));
+  }
+
+  @Test
+  public void testCreateWithWrongProvider() throws Exception
+  {
+    boolean rsa = "RSA".equals(getPGPSecret().publicKey().getAlgorithm());
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    service.setSecret(secretWithProvider(rsa ? CryptoProvider.SUN_EC : CryptoProvider.SUN_RSA_SIGN));
+    try
+    {
+      execute(service, message());
+      fail();
+    }
+    catch (CoreException expected)
+    {
+      // the provider cannot create keys of this type
+    }
+  }
+
+  private PGPSecret secretWithProvider(CryptoProvider provider)
+  {
+    PGPSecret secret = getPGPSecret();
+    secret.setProvider(provider);
+    return secret;
+  }
+
+  /**
+   * Create a token with the secret, returning the providers published over JMX for its key while the service ran.
+   */
+  private List<String> createWithProvider(PGPSecret secret) throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    service.setSecret(secret);
+    AdaptrisMessage message = message();
+    List<String> published;
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      service.doService(message);
+      published = selectedProviders(secret.keyId());
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+
+    Claims claims = Jwts.parserBuilder().setSigningKey(getPGPSecret().publicKey()).build().parseClaimsJws(message.getContent()).getBody();
+    assertEquals("Bob", claims.getSubject());
+    return published;
+  }
+
+  private static List<String> selectedProviders(String keyId) throws Exception
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    List<String> result = new ArrayList<>();
+    for (ObjectName name : server.queryNames(new ObjectName("com.adaptris.core.jwt:type=CryptoProviderSelections,*"), null))
+    {
+      String selected = (String)server.invoke(name, "selectedProvider", new Object[] { keyId }, new String[] { String.class.getName() });
+      if (selected != null)
+      {
+        result.add(selected);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testCreateConnection() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    JWTVerifierConnection connection = new JWTVerifierConnection();
+    connection.setSecret(getPGPSecret());
+    service.setSecret(null);
+    service.setConnection(connection);
+
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    Jws<Claims> jws = Jwts.parserBuilder().setSigningKey(getPGPSecret().publicKey()).build().parseClaimsJws(message.getContent());
+    assertEquals("Bob", jws.getBody().getSubject());
+    assertEquals(getPGPSecret().keyId(), jws.getHeader().getKeyId());
+  }
+
+  @Test
+  public void testCreateCompressed() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    KeyValuePairSet claims = new KeyValuePairSet();
+    claims.addKeyValuePair(new KeyValuePair("payload", "%message{%payload}"));
+    service.setCustomClaims(claims);
+    service.setCompress(true);
+
+    AdaptrisMessage message = message();
+    String payload = String.join(",", Collections.nCopies(1000, "repetitive payload"));
+    message.setContent(payload, message.getContentEncoding());
+
+    execute(service, message);
+
+    assertTrue(message.getContent().length() < payload.length());
+
+    JWTDecoder decoder = new JWTDecoder();
+    decoder.setJwtString(new StringPayloadDataInputParameter());
+    decoder.setSecret(getPGPSecret());
+    decoder.setHeader(new MetadataDataOutputParameter("header"));
+    decoder.setClaims(new StringPayloadDataOutputParameter());
+
+    execute(decoder, message);
+
+    assertEquals("DEF", new JSONObject(message.getMetadataValue("header")).getString("zip"));
+    assertEquals(payload, new JSONObject(message.getContent()).getString("payload"));
+  }
+
   @Test
   public void testException()
   {
@@ -91,16 +358,67 @@ public class JWTCreatorTest extends JWTCommonTest
 
       AdaptrisMessage message = message();
 
-      service.doService(message);
+      execute(service, message);
 
       fail();
     }
-    catch (ServiceException e)
+    catch (CoreException e)
     {
       /* expected */
     }
   }
 
+  @Test
+  public void testCreateClock() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    service.setExpiresIn("5m");
+    service.setClock(new ControllableClock(PARSER.parse("2030-06-01")));
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    service.setSecret(secret);
+
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    Claims claims = parse(message.getContent());
+    assertEquals(PARSER.parse("2030-06-01"), claims.getIssuedAt());
+    assertEquals(300_000L, claims.getExpiration().getTime() - claims.getIssuedAt().getTime());
+  }
+
+  @Test
+  public void testCreateIdGenerators() throws Exception
+  {
+    JWTCreator service = (JWTCreator)retrieveObjectForSampleConfig();
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(KEY);
+    service.setSecret(secret);
+
+    service.setIdGenerator(new FastRandomIdGenerator());
+    assertEquals(4, UUID.fromString(createId(service)).version());
+
+    service.setIdGenerator(new TimeOrderedIdGenerator());
+    long before = System.currentTimeMillis();
+    UUID id = UUID.fromString(createId(service));
+    assertEquals(7, id.version());
+    assertEquals(2, id.variant());
+    long timestamp = id.getMostSignificantBits() >>> 16;
+    assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+  }
+
+  private String createId(JWTCreator service) throws Exception
+  {
+    AdaptrisMessage message = message();
+    execute(service, message);
+    return parse(message.getContent()).getId();
+  }
+
+  private static Claims parse(String jwt)
+  {
+    return Jwts.parserBuilder().setSigningKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(KEY))).build().parseClaimsJws(jwt).getBody();
+  }
+
   @SneakyThrows
   @Override
   protected Object retrieveObjectForSampleConfig()
@@ -1,17 +1,52 @@
 package com.adaptris.core.jwt;
 
 import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.AdaptrisMessageFactory;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.ServiceException;
 import com.adaptris.core.common.ConstantDataInputParameter;
 import com.adaptris.core.common.MetadataDataOutputParameter;
+import com.adaptris.core.common.StringPayloadDataInputParameter;
 import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.jwt.clock.ControllableClock;
 import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import com.adaptris.core.jwt.secrets.KeyDirectorySecret;
 import com.adaptris.core.jwt.secrets.PGPSecret;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.TimeInterval;
+import io.jsonwebtoken.CompressionCodecs;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.WeakKeyException;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
 
+import javax.crypto.SecretKey;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
-import static org.skyscreamer.jsonassert.JSONAssert.assertEquals;
 
 public class JWTDecoderTest extends JWTCommonTest
 {
@@ -22,14 +57,14 @@ public class JWTDecoderTest extends JWTCommonTest
     JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
     AdaptrisMessage message = message();
 
-    service.doService(message);
+    execute(service, message);
 
-    assertEquals(HEADER, new JSONObject(message.getMetadataValue("header")), false);
-    assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+    JSONAssert.assertEquals(HEADER, new JSONObject(message.getMetadataValue("header")), false);
+    JSONAssert.assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
   }
 
   @Test
-  public void testInvalidKey()
+  public void testInvalidKey() throws Exception
   {
     try
     {
@@ -39,16 +74,512 @@ public class JWTDecoderTest extends JWTCommonTest
       service.setSecret(secret);
       AdaptrisMessage message = message();
 
-      service.doService(message);
+      execute(service, message);
 
       fail();
     }
-    catch (ServiceException e)
+    catch (CoreException e)
     {
       // expected
     }
   }
 
+  @Test
+  public void testDecodeClock() throws Exception
+  {
+    // the token is valid from 2020-01-01 until 2040-12-31
+    assertValidAt(new Date(1577836800_000L), true);
+    assertValidAt(new Date(1577836800_000L - 60_000L), false);
+    assertValidAt(new Date(2240524800_000L), true);
+    assertValidAt(new Date(2240524800_000L + 1_000L), false);
+  }
+
+  private void assertValidAt(Date now, boolean valid) throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setClock(new ControllableClock(now));
+    try
+    {
+      execute(service, message());
+      assertTrue("Token should not be valid at " + now, valid);
+    }
+    catch (ServiceException e)
+    {
+      assertTrue("Token should be valid at " + now, !valid);
+    }
+  }
+
+  @Test
+  public void testLatencyTracing() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setUniqueId("traced-decoder");
+    service.setJwtString(new StringPayloadDataInputParameter());
+    LatencyTracing tracing = new LatencyTracing();
+    tracing.setSampleRate(1.0);
+    tracing.setBufferSize(2);
+    service.setLatencyTracing(tracing);
+    ObjectName name = new ObjectName("com.adaptris.core.jwt:type=LatencyTracing,id=\"traced-decoder\"");
+    String tampered = JWT.substring(0, JWT.length() - 4) + "AAAA";
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+      for (String jwt : new String[] { JWT, JWT, tampered })
+      {
+        try
+        {
+          service.doService(AdaptrisMessageFactory.getDefaultInstance().newMessage(jwt));
+        }
+        catch (ServiceException e)
+        {
+          // the tampered token
+        }
+      }
+      assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "TimedTokens"));
+
+      String dump = (String)ManagementFactory.getPlatformMBeanServer().invoke(name, "dump", null, null);
+      JSONArray traces = new JSONArray(dump);
+      assertEquals(2, traces.length());
+      assertEquals("HS512", traces.getJSONObject(0).getString("alg"));
+      assertFalse(traces.getJSONObject(0).has("error"));
+      assertEquals("HS512", traces.getJSONObject(1).getString("alg"));
+      assertEquals("SignatureException", traces.getJSONObject(1).getString("error"));
+      assertFalse(dump.contains(JWT.substring(JWT.lastIndexOf('.') + 1, JWT.length() - 4)));
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  @Test
+  public void testLatencyTracingSlowTokens() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    LatencyTracing tracing = new LatencyTracing();
+    tracing.setSampleRate(0.0);
+    tracing.setSlowThreshold(new TimeInterval(0L, TimeUnit.MILLISECONDS));
+    service.setLatencyTracing(tracing);
+
+    execute(service, message());
+
+    assertEquals(1L, tracing.getSlowTokens());
+    JSONArray traces = new JSONArray(tracing.dump());
+    assertEquals(1, traces.length());
+    // the token was not sampled, so only its total time was taken
+    assertTrue(traces.getJSONObject(0).has("totalMicros"));
+    assertFalse(traces.getJSONObject(0).has("keyMicros"));
+    assertEquals("HS512", traces.getJSONObject(0).getString("alg"));
+  }
+
+  @Test
+  public void testLatencyTracingNotSampled() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    LatencyTracing tracing = new LatencyTracing();
+    tracing.setSampleRate(0.0);
+    service.setLatencyTracing(tracing);
+
+    execute(service, message());
+
+    assertEquals(1L, tracing.getTimedTokens());
+    assertEquals(0L, tracing.getSlowTokens());
+    assertEquals(0, new JSONArray(tracing.dump()).length());
+  }
+
+  @Test
+  public void testLatencyTracingSameId() throws Exception
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    LatencyTracing first = new LatencyTracing();
+    LatencyTracing second = new LatencyTracing();
+    LatencyTracing unnamed = new LatencyTracing();
+    try
+    {
+      first.init("same-decoder");
+      second.init("same-decoder");
+      unnamed.init(null);
+      Set<ObjectName> names = server.queryNames(new ObjectName("com.adaptris.core.jwt:type=LatencyTracing,*"), null);
+      assertEquals(2, names.stream().filter(n -> n.getKeyProperty("id").startsWith("\"same-decoder")).count());
+
+      first.close();
+      assertFalse(server.isRegistered(new ObjectName("com.adaptris.core.jwt:type=LatencyTracing,id=\"same-decoder\"")));
+      assertEquals(1, server.queryNames(new ObjectName("com.adaptris.core.jwt:type=LatencyTracing,*"), null).stream()
+          .filter(n -> n.getKeyProperty("id").startsWith("\"same-decoder")).count());
+    }
+    finally
+    {
+      first.close();
+      second.close();
+      unnamed.close();
+    }
+  }
+
+  @Test
+  public void testAlgorithmPolicy() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    AlgorithmPolicy policy = new AlgorithmPolicy("HS256", "HS512");
+    service.setAlgorithmPolicy(policy);
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      service.doService(message());
+      service.doService(message());
+
+      assertEquals(2, policy.find("HS512", "me").verified());
+      assertEquals(1, new JSONArray(policy.dump()).length());
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  @Test
+  public void testAlgorithmPolicyRejected() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    // the key would fail to load, so the token must be rejected before it is needed
+    PGPSecret secret = getPGPSecret();
+    secret.setPath(wrongKey);
+    service.setSecret(secret);
+    service.setKeyLoading(KeyLoading.LAZY);
+    AlgorithmPolicy policy = new AlgorithmPolicy("RS256", "ES256");
+    service.setAlgorithmPolicy(policy);
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      service.doService(message());
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      assertTrue(e.getCause() instanceof UnsupportedJwtException);
+      assertEquals(1, policy.getRejectedTokens());
+      assertEquals(1, policy.find("HS512", null).rejected());
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  @Test
+  public void testAlgorithmPolicyWeakKey() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    AlgorithmPolicy policy = new AlgorithmPolicy();
+    policy.setMinimumHmacKeySize(1024);
+    service.setAlgorithmPolicy(policy);
+    try
+    {
+      execute(service, message());
+      fail();
+    }
+    catch (CoreException expected)
+    {
+      // the key is only 512 bits
+    }
+  }
+
+  @Test
+  public void testAlgorithmPolicyWeakConnectionKey() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    JWTVerifierConnection connection = new JWTVerifierConnection();
+    connection.setSecret(service.getSecret());
+    service.setSecret(null);
+    service.setConnection(connection);
+    AlgorithmPolicy policy = new AlgorithmPolicy();
+    policy.setMinimumHmacKeySize(1024);
+    service.setAlgorithmPolicy(policy);
+    try
+    {
+      execute(service, message());
+      fail();
+    }
+    catch (CoreException expected)
+    {
+      // the connection's key is only 512 bits
+    }
+  }
+
+  @Test
+  public void testAlgorithmPolicyWeakTenantKey() throws Exception
+  {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    KeyPair tenant = generator.generateKeyPair();
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    write(new File(directory, "tenant.pem"), "-----BEGIN PUBLIC KEY-----\n"
+        + Base64.getMimeEncoder().encodeToString(tenant.getPublic().getEncoded())
+        + "\n-----END PUBLIC KEY-----\n");
+    KeyDirectorySecret secret = new KeyDirectorySecret();
+    secret.setDirectory(directory.getPath());
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setSecret(secret);
+    service.setAlgorithmPolicy(new AlgorithmPolicy());
+    // jjwt will not sign with a 1024 bit key, so sign the token by hand.
+    String signed = base64Url(new JSONObject().put("alg", "RS256").put("kid", "tenant").toString().getBytes(StandardCharsets.UTF_8))
+        + "." + base64Url(CLAIMS.toString().getBytes(StandardCharsets.UTF_8));
+    Signature signature = Signature.getInstance("SHA256withRSA");
+    signature.initSign(tenant.getPrivate());
+    signature.update(signed.getBytes(StandardCharsets.US_ASCII));
+    service.setJwtString(new ConstantDataInputParameter(signed + "." + base64Url(signature.sign())));
+    try
+    {
+      execute(service, message());
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      // rejected by the policy when the tenant key is resolved, before jjwt checks it
+      Throwable cause = ExceptionUtils.getRootCause(e);
+      assertTrue(cause instanceof WeakKeyException);
+      assertEquals("RSA key is 1024 bits, but must be at least 2048 bits", cause.getMessage());
+    }
+  }
+
+  @Test
+  public void testAlgorithmPolicyWeakLazyConnectionKey() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    JWTVerifierConnection connection = new JWTVerifierConnection();
+    connection.setSecret(service.getSecret());
+    connection.setKeyLoading(KeyLoading.LAZY);
+    service.setSecret(null);
+    service.setConnection(connection);
+    AlgorithmPolicy policy = new AlgorithmPolicy();
+    policy.setMinimumHmacKeySize(1024);
+    service.setAlgorithmPolicy(policy);
+    try
+    {
+      // starting does not load the connection's keys, so the key is checked with the first token.
+      LifecycleHelper.initAndStart(service);
+      service.doService(message());
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      assertTrue(ExceptionUtils.getRootCause(e) instanceof WeakKeyException);
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  @Test
+  public void testDecodeKeyLoading() throws Exception
+  {
+    for (KeyLoading keyLoading : KeyLoading.values())
+    {
+      JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+      service.setKeyLoading(keyLoading);
+      AdaptrisMessage message = message();
+
+      execute(service, message);
+
+      JSONAssert.assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+    }
+  }
+
+  @Test
+  public void testLazyInvalidKey() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    PGPSecret secret = getPGPSecret();
+    secret.setPath(wrongKey);
+    service.setSecret(secret);
+    service.setKeyLoading(KeyLoading.LAZY);
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      service.doService(message());
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      // expected; the key is only loaded on first use
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  @Test
+  public void testKeysClearedOnClose() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    SecretKey key = (SecretKey)service.getSecret().publicKey();
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    assertTrue(key.isDestroyed());
+    execute(service, message);
+    JSONAssert.assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+  }
+
+  @Test
+  public void testDecodeCompressionLimit() throws Exception
+  {
+    String jwt = Jwts.builder().claim("payload", String.join("", Collections.nCopies(2 * 1024 * 1024, "0")))
+        .compressWith(CompressionCodecs.DEFLATE).signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(KEY))).compact();
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setJwtString(new ConstantDataInputParameter(jwt));
+    try
+    {
+      execute(service, message());
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      // expected; exceeds the default limit
+    }
+    service.setMaxDecompressedSize(4 * 1024 * 1024);
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    assertTrue(new JSONObject(message.getContent()).has("payload"));
+  }
+
+  @Test
+  public void testDecodeGzip() throws Exception
+  {
+    String payload = String.join("", Collections.nCopies(2 * 1024 * 1024, "0"));
+    String jwt = Jwts.builder().claim("payload", payload).compressWith(CompressionCodecs.GZIP)
+        .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(KEY))).compact();
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setJwtString(new ConstantDataInputParameter(jwt));
+    try
+    {
+      execute(service, message());
+      fail();
+    }
+    catch (ServiceException e)
+    {
+      // expected; exceeds the default limit
+    }
+    service.setMaxDecompressedSize(4 * 1024 * 1024);
+    // decoding twice, with the service closed in between, reuses and then replaces the per-thread inflater
+    for (int i = 0; i < 2; i++)
+    {
+      AdaptrisMessage message = message();
+
+      execute(service, message);
+
+      assertEquals(payload, new JSONObject(message.getContent()).getString("payload"));
+    }
+  }
+
+  @Test
+  public void testDecodeConnection() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    JWTVerifierConnection connection = new JWTVerifierConnection();
+    connection.setSecret(service.getSecret());
+    service.setSecret(null);
+    service.setConnection(connection);
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    JSONAssert.assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+  }
+
+  @Test
+  public void testDecodeConnectionWithDecoderSettings() throws Exception
+  {
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    JWTVerifierConnection connection = new JWTVerifierConnection();
+    connection.setSecret(service.getSecret());
+    service.setConnection(connection);
+    service.setMaxDecompressedSize(1024);
+    try
+    {
+      service.prepare();
+      fail();
+    }
+    catch (CoreException e)
+    {
+      assertEquals("The connection is used instead of secret, max-decompressed-size; configure them on the connection", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testDecodeKeyDirectory() throws Exception
+  {
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    write(new File(directory, "me.key"), KEY);
+    write(new File(directory, "someone-else.key"), ENCRYPTION_KEY);
+    KeyDirectorySecret secret = new KeyDirectorySecret();
+    secret.setDirectory(directory.getPath());
+    secret.setKeyLookup(KeyDirectorySecret.KeyLookup.ISSUER);
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setSecret(secret);
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    JSONAssert.assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+  }
+
+  @Test
+  public void testDecodeKeyDirectoryKeyId() throws Exception
+  {
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    KeyDirectorySecret secret = new KeyDirectorySecret();
+    secret.setDirectory(directory.getPath());
+    secret.setRefreshInterval(new TimeInterval(0L, TimeUnit.MILLISECONDS));
+    JWTDecoder service = (JWTDecoder)retrieveObjectForSampleConfig();
+    service.setSecret(secret);
+    String jwt = Jwts.builder().setClaims(CLAIMS.toMap()).setHeaderParam(JwsHeader.KEY_ID, "tenant").signWith(getPGPSecret().privateKey()).compact();
+    service.setJwtString(new ConstantDataInputParameter(jwt));
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      try
+      {
+        service.doService(message());
+        fail();
+      }
+      catch (ServiceException expected)
+      {
+        // no key for the tenant yet
+      }
+      write(new File(directory, "tenant.pem"), "-----BEGIN PUBLIC KEY-----\n"
+          + Base64.getMimeEncoder().encodeToString(getPGPSecret().publicKey().getEncoded())
+          + "\n-----END PUBLIC KEY-----\n");
+      AdaptrisMessage message = message();
+
+      service.doService(message);
+
+      JSONAssert.assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+  }
+
+  private static String base64Url(byte[] bytes)
+  {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  private static void write(File file, String content) throws Exception
+  {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    file.deleteOnExit();
+  }
+
   @Override
   protected Object retrieveObjectForSampleConfig()
   {
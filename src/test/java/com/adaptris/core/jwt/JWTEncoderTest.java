@@ -1,7 +1,7 @@
 package com.adaptris.core.jwt;
 
 import com.adaptris.core.AdaptrisMessage;
-import com.adaptris.core.ServiceException;
+import com.adaptris.core.CoreException;
 import com.adaptris.core.common.ConstantDataInputParameter;
 import com.adaptris.core.common.StringPayloadDataOutputParameter;
 import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
@@ -20,14 +20,29 @@ public class JWTEncoderTest extends JWTCommonTest
     JWTEncoder service = (JWTEncoder)retrieveObjectForSampleConfig();
     AdaptrisMessage message = message();
 
-    service.doService(message);
+    execute(service, message);
 
     String s = message.getContent();
     assertEquals(JWT, s);
   }
 
   @Test
-  public void testBadSecret()
+  public void testEncodeKeyLoading() throws Exception
+  {
+    for (KeyLoading keyLoading : KeyLoading.values())
+    {
+      JWTEncoder service = (JWTEncoder)retrieveObjectForSampleConfig();
+      service.setKeyLoading(keyLoading);
+      AdaptrisMessage message = message();
+
+      execute(service, message);
+
+      assertEquals(JWT, message.getContent());
+    }
+  }
+
+  @Test
+  public void testBadSecret() throws Exception
   {
     try
     {
@@ -35,11 +50,11 @@ public class JWTEncoderTest extends JWTCommonTest
       service.setSecret(new Base64EncodedSecret());
       AdaptrisMessage message = message();
 
-      service.doService(message);
+      execute(service, message);
 
       fail();
     }
-    catch (ServiceException e)
+    catch (CoreException e)
     {
       /* expected */
     }
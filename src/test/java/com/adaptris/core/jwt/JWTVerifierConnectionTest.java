@@ -0,0 +1,202 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.jwt.clock.ControllableClock;
+import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import com.adaptris.core.jwt.secrets.KeyDirectorySecret;
+import com.adaptris.core.util.LifecycleHelper;
+import com.adaptris.util.TimeInterval;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JWTVerifierConnectionTest
+{
+  private JWTVerifierConnection connection;
+  private ControllableClock clock;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(JWTCommonTest.KEY);
+    clock = new ControllableClock(new Date(1600000000_000L));
+    connection = new JWTVerifierConnection();
+    connection.setSecret(secret);
+    connection.setClock(clock);
+    LifecycleHelper.initAndStart(connection);
+  }
+
+  @After
+  public void tearDown()
+  {
+    LifecycleHelper.stopAndClose(connection);
+  }
+
+  @Test
+  public void testVerifyCached() throws Exception
+  {
+    Jws<Claims> jws = connection.verify(JWTCommonTest.JWT);
+
+    assertEquals("Bob", jws.getBody().getSubject());
+    assertSame(jws, connection.verify(JWTCommonTest.JWT));
+  }
+
+  @Test
+  public void testCachedTokenReadOnly() throws Exception
+  {
+    Jws<Claims> jws = connection.verify(JWTCommonTest.JWT);
+    try
+    {
+      jws.getBody().setSubject("Alice");
+      fail();
+    }
+    catch (UnsupportedOperationException expected)
+    {
+      /* expected */
+    }
+    try
+    {
+      jws.getBody().put("sub", "Alice");
+      fail();
+    }
+    catch (UnsupportedOperationException expected)
+    {
+      /* expected */
+    }
+    try
+    {
+      jws.getHeader().setAlgorithm("none");
+      fail();
+    }
+    catch (UnsupportedOperationException expected)
+    {
+      /* expected */
+    }
+    assertEquals("Bob", connection.verify(JWTCommonTest.JWT).getBody().getSubject());
+    assertEquals("HS512", connection.verify(JWTCommonTest.JWT).getHeader().getAlgorithm());
+  }
+
+  @Test
+  public void testCacheSize() throws Exception
+  {
+    LifecycleHelper.stopAndClose(connection);
+    connection.setMaxCacheSize(JWTCommonTest.JWT.length() - 1);
+    LifecycleHelper.initAndStart(connection);
+
+    assertNotSame(connection.verify(JWTCommonTest.JWT), connection.verify(JWTCommonTest.JWT));
+  }
+
+  @Test
+  public void testCacheDroppedWhenKeyRemoved() throws Exception
+  {
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    File key = new File(directory, "me.key");
+    Files.write(key.toPath(), JWTCommonTest.KEY.getBytes(StandardCharsets.US_ASCII));
+    KeyDirectorySecret secret = new KeyDirectorySecret();
+    secret.setDirectory(directory.getPath());
+    secret.setKeyLookup(KeyDirectorySecret.KeyLookup.ISSUER);
+    secret.setRefreshInterval(new TimeInterval(0L, TimeUnit.MILLISECONDS));
+    LifecycleHelper.stopAndClose(connection);
+    connection.setSecret(secret);
+    LifecycleHelper.initAndStart(connection);
+
+    Jws<Claims> jws = connection.verify(JWTCommonTest.JWT);
+    assertSame(jws, connection.verify(JWTCommonTest.JWT));
+    assertTrue(key.delete());
+    try
+    {
+      connection.verify(JWTCommonTest.JWT);
+      fail();
+    }
+    catch (SignatureException expected)
+    {
+      // the key has been revoked, so the cached token is verified again.
+    }
+  }
+
+  @Test
+  public void testCacheDisabled() throws Exception
+  {
+    LifecycleHelper.stopAndClose(connection);
+    connection.setMaxCacheEntries(0);
+    LifecycleHelper.initAndStart(connection);
+
+    assertNotSame(connection.verify(JWTCommonTest.JWT), connection.verify(JWTCommonTest.JWT));
+  }
+
+  @Test
+  public void testCacheHonoursExpiration() throws Exception
+  {
+    String jwt = Jwts.builder().setSubject("Bob").setExpiration(new Date(clock.millis() + 5000))
+        .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(JWTCommonTest.KEY))).compact();
+    Jws<Claims> jws = connection.verify(jwt);
+    clock.advance(Duration.ofSeconds(4));
+    assertSame(jws, connection.verify(jwt));
+    clock.advance(Duration.ofSeconds(2));
+    try
+    {
+      connection.verify(jwt);
+      fail();
+    }
+    catch (Exception expected)
+    {
+      // token has expired, even though it was cached.
+    }
+  }
+
+  @Test
+  public void testCacheTtl() throws Exception
+  {
+    Jws<Claims> jws = connection.verify(JWTCommonTest.JWT);
+    clock.advance(Duration.ofSeconds(59));
+    assertSame(jws, connection.verify(JWTCommonTest.JWT));
+    clock.advance(Duration.ofSeconds(1));
+    assertNotSame(jws, connection.verify(JWTCommonTest.JWT));
+  }
+
+  @Test
+  public void testSign() throws Exception
+  {
+    String jwt = connection.sign(Jwts.builder().setSubject("Alice")).compact();
+
+    assertEquals("Alice", connection.verify(jwt).getBody().getSubject());
+  }
+
+  @Test
+  public void testSignVerifyOnly() throws Exception
+  {
+    KeyDirectorySecret secret = new KeyDirectorySecret();
+    secret.setDirectory(Files.createTempDirectory(getClass().getSimpleName()).toString());
+    LifecycleHelper.stopAndClose(connection);
+    connection.setSecret(secret);
+    LifecycleHelper.initAndStart(connection);
+    try
+    {
+      connection.sign(Jwts.builder().setSubject("Alice"));
+      fail();
+    }
+    catch (Exception expected)
+    {
+      // a key directory can only verify tokens.
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.common.ConstantDataInputParameter;
+import com.adaptris.core.common.MetadataDataOutputParameter;
+import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import io.jsonwebtoken.Jwts;
+import lombok.SneakyThrows;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.fail;
+import static org.skyscreamer.jsonassert.JSONAssert.assertEquals;
+
+public class NestedJWTDecoderTest extends JWTCommonTest
+{
+  @Test
+  public void testDecode() throws Exception
+  {
+    NestedJWTDecoder service = (NestedJWTDecoder)retrieveObjectForSampleConfig();
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    assertEquals(CLAIMS, new JSONObject(message.getContent()), false);
+  }
+
+  @Test
+  public void testWrongEncryptionKey() throws Exception
+  {
+    try
+    {
+      NestedJWTDecoder service = (NestedJWTDecoder)retrieveObjectForSampleConfig();
+      Base64EncodedSecret secret = new Base64EncodedSecret();
+      secret.setSecret("HyAdHBsaGRgXFhUUExIREA8ODQwLCgkIBwYFBAMCAQA=");
+      service.setEncryptionSecret(secret);
+
+      execute(service, message());
+
+      fail();
+    }
+    catch (CoreException e)
+    {
+      /* expected */
+    }
+  }
+
+  @Test
+  public void testTampered() throws Exception
+  {
+    try
+    {
+      NestedJWTDecoder service = (NestedJWTDecoder)retrieveObjectForSampleConfig();
+      String jwe = JsonWebEncryption.encrypt(JWT, encryptionSecret().encryptionKey(), JsonWebEncryption.CONTENT_TYPE_JWT);
+      String[] parts = jwe.split("\\.");
+      parts[3] = parts[3].substring(1) + parts[3].charAt(0);
+      service.setJwtString(new ConstantDataInputParameter(String.join(".", parts)));
+
+      execute(service, message());
+
+      fail();
+    }
+    catch (CoreException e)
+    {
+      /* expected */
+    }
+  }
+
+  @Test
+  public void testNotSignedBySigningSecret() throws Exception
+  {
+    try
+    {
+      NestedJWTDecoder service = (NestedJWTDecoder)retrieveObjectForSampleConfig();
+      String jwe = JsonWebEncryption.encrypt(JWT, encryptionSecret().encryptionKey(), JsonWebEncryption.CONTENT_TYPE_JWT);
+      service.setJwtString(new ConstantDataInputParameter(jwe));
+
+      execute(service, message());
+
+      fail();
+    }
+    catch (CoreException e)
+    {
+      /* expected */
+    }
+  }
+
+  private Base64EncodedSecret encryptionSecret()
+  {
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(ENCRYPTION_KEY);
+    return secret;
+  }
+
+  @SneakyThrows
+  @Override
+  protected Object retrieveObjectForSampleConfig()
+  {
+    String jws = Jwts.builder().setClaims(CLAIMS.toMap()).signWith(getPGPSecret().privateKey()).compact();
+    NestedJWTDecoder decoder = new NestedJWTDecoder();
+    decoder.setJwtString(new ConstantDataInputParameter(JsonWebEncryption.encrypt(jws, encryptionSecret().encryptionKey(), JsonWebEncryption.CONTENT_TYPE_JWT)));
+    decoder.setEncryptionSecret(encryptionSecret());
+    decoder.setSigningSecret(getPGPSecret());
+    decoder.setHeader(new MetadataDataOutputParameter("header"));
+    decoder.setClaims(new StringPayloadDataOutputParameter());
+    return decoder;
+  }
+}
@@ -0,0 +1,187 @@
+package com.adaptris.core.jwt;
+
+import com.adaptris.core.AdaptrisMessage;
+import com.adaptris.core.CoreException;
+import com.adaptris.core.common.ConstantDataInputParameter;
+import com.adaptris.core.common.MetadataDataOutputParameter;
+import com.adaptris.core.common.StringPayloadDataInputParameter;
+import com.adaptris.core.common.StringPayloadDataOutputParameter;
+import com.adaptris.core.jwt.secrets.Base64EncodedSecret;
+import com.adaptris.core.jwt.secrets.PGPSecret;
+import com.adaptris.core.jwt.secrets.SecretConfigurator;
+import com.adaptris.core.util.LifecycleHelper;
+import io.jsonwebtoken.io.Decoders;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import javax.security.auth.Destroyable;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NestedJWTEncoderTest extends JWTCommonTest
+{
+  @Test
+  public void testEncodeDirect() throws Exception
+  {
+    NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    assertEquals(5, message.getContent().split("\\.", -1).length);
+    assertRoundTrip(message, encryptionSecret());
+  }
+
+  @Test
+  public void testEncodeDirect128() throws Exception
+  {
+    assertEncodeDirect("AAECAwQFBgcICQoLDA0ODw==", "A128GCM");
+  }
+
+  @Test
+  public void testEncodeDirect192() throws Exception
+  {
+    assertEncodeDirect("AAECAwQFBgcICQoLDA0ODxAREhMUFRYX", "A192GCM");
+  }
+
+  @Test
+  public void testEncodeDirectInvalidKeyLength() throws Exception
+  {
+    try
+    {
+      NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+      service.setEncryptionSecret(encryptionSecret("AAECAwQFBgcICQoLDA0ODxAREhM="));
+
+      execute(service, message());
+
+      fail();
+    }
+    catch (CoreException e)
+    {
+      /* expected */
+    }
+  }
+
+  @Test
+  public void testEncryptionKeyDestroyedOnClose() throws Exception
+  {
+    NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+    Base64EncodedSecret secret = encryptionSecret();
+    service.setEncryptionSecret(secret);
+    Destroyable key;
+    try
+    {
+      LifecycleHelper.initAndStart(service);
+      key = (Destroyable)secret.encryptionKey();
+      service.doService(message());
+      assertFalse(key.isDestroyed());
+    }
+    finally
+    {
+      LifecycleHelper.stopAndClose(service);
+    }
+    assertTrue(key.isDestroyed());
+  }
+
+  @Test
+  public void testEncodeKeyId() throws Exception
+  {
+    NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    assertRoundTrip(message, encryptionSecret());
+    assertEquals(getPGPSecret().keyId(), new JSONObject(message.getMetadataValue("header")).get("kid"));
+  }
+
+  @Test
+  public void testEncodeRSA() throws Exception
+  {
+    NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+    service.setEncryptionSecret(getPGPSecret());
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    assertRoundTrip(message, getPGPSecret());
+  }
+
+  @Test
+  public void testInvalidKey() throws Exception
+  {
+    try
+    {
+      NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+      PGPSecret secret = getPGPSecret();
+      secret.setPath(wrongKey);
+      service.setSigningSecret(secret);
+
+      execute(service, message());
+
+      fail();
+    }
+    catch (CoreException e)
+    {
+      /* expected */
+    }
+  }
+
+  private void assertEncodeDirect(String key, String enc) throws Exception
+  {
+    NestedJWTEncoder service = (NestedJWTEncoder)retrieveObjectForSampleConfig();
+    service.setEncryptionSecret(encryptionSecret(key));
+    AdaptrisMessage message = message();
+
+    execute(service, message);
+
+    String header = new String(Decoders.BASE64URL.decode(message.getContent().split("\\.")[0]), StandardCharsets.UTF_8);
+    assertEquals(enc, new JSONObject(header).get("enc"));
+    assertRoundTrip(message, encryptionSecret(key));
+  }
+
+  private void assertRoundTrip(AdaptrisMessage message, SecretConfigurator encryptionSecret) throws Exception
+  {
+    NestedJWTDecoder decoder = new NestedJWTDecoder();
+    decoder.setJwtString(new StringPayloadDataInputParameter());
+    decoder.setEncryptionSecret(encryptionSecret);
+    decoder.setSigningSecret(getPGPSecret());
+    decoder.setHeader(new MetadataDataOutputParameter("header"));
+    decoder.setClaims(new StringPayloadDataOutputParameter());
+
+    execute(decoder, message);
+
+    JSONObject json = new JSONObject(message.getContent());
+    assertEquals(CLAIMS.get("sub"), json.get("sub"));
+    assertEquals(CLAIMS.get("jti"), json.get("jti"));
+    assertEquals("RS256", new JSONObject(message.getMetadataValue("header")).get("alg"));
+  }
+
+  protected Base64EncodedSecret encryptionSecret()
+  {
+    return encryptionSecret(ENCRYPTION_KEY);
+  }
+
+  protected Base64EncodedSecret encryptionSecret(String key)
+  {
+    Base64EncodedSecret secret = new Base64EncodedSecret();
+    secret.setSecret(key);
+    return secret;
+  }
+
+  @Override
+  protected Object retrieveObjectForSampleConfig()
+  {
+    NestedJWTEncoder encoder = new NestedJWTEncoder();
+    encoder.setHeader(new ConstantDataInputParameter(HEADER.toString()));
+    encoder.setClaims(new ConstantDataInputParameter(CLAIMS.toString()));
+    encoder.setSigningSecret(getPGPSecret());
+    encoder.setEncryptionSecret(encryptionSecret());
+    encoder.setJwtOutput(new StringPayloadDataOutputParameter());
+    return encoder;
+  }
+}
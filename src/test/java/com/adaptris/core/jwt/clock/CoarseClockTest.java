@@ -0,0 +1,57 @@
+package com.adaptris.core.jwt.clock;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoarseClockTest
+{
+  private static final Date START = new Date(1600000000_000L);
+
+  @Test
+  public void testOnlyMovesOnTick()
+  {
+    ControllableClock source = new ControllableClock(START);
+    CoarseClock clock = new CoarseClock(source);
+    clock.setResolutionMs(60_000);
+    try
+    {
+      clock.init();
+      source.advance(Duration.ofSeconds(5));
+      assertEquals(START, clock.now());
+
+      clock.tick();
+      assertEquals(START.getTime() + 5000, clock.millis());
+    }
+    finally
+    {
+      clock.close();
+    }
+  }
+
+  @Test
+  public void testNotInitialised()
+  {
+    ControllableClock source = new ControllableClock(START);
+    CoarseClock clock = new CoarseClock(source);
+    source.advance(Duration.ofSeconds(5));
+
+    assertEquals(START.getTime() + 5000, clock.millis());
+  }
+
+  @Test
+  public void testClosed()
+  {
+    ControllableClock source = new ControllableClock(START);
+    CoarseClock clock = new CoarseClock(source);
+    clock.setResolutionMs(60_000);
+    clock.init();
+    clock.close();
+    source.advance(Duration.ofSeconds(5));
+
+    assertEquals(START.getTime() + 5000, clock.millis());
+  }
+}
@@ -0,0 +1,77 @@
+package com.adaptris.core.jwt.secrets;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Key;
+import java.util.Base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class KeyIndexTest
+{
+  private static final byte[] OLD_KEY = new byte[32];
+  private static final byte[] NEW_KEY = new byte[48];
+
+  static
+  {
+    OLD_KEY[0] = 1;
+    NEW_KEY[0] = 2;
+  }
+
+  @Test
+  public void testReplacedKeyStillUsable() throws Exception
+  {
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    File file = write(directory, "tenant.key", OLD_KEY);
+    KeyIndex index = new KeyIndex(directory, Long.MAX_VALUE);
+    index.refresh();
+    Key old = index.get("tenant");
+
+    write(directory, "tenant.key", NEW_KEY);
+    file.setLastModified(file.lastModified() + 2000);
+    index.refresh();
+
+    assertNotSame(old, index.get("tenant"));
+    assertArrayEquals(NEW_KEY, index.get("tenant").getEncoded());
+    // a verification that started before the refresh can still use the old key.
+    assertArrayEquals(OLD_KEY, old.getEncoded());
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testDirectoryMissingKeepsKeys() throws Exception
+  {
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    File file = write(directory, "tenant.key", OLD_KEY);
+    KeyIndex index = new KeyIndex(directory, 0);
+    index.refresh();
+
+    file.delete();
+    directory.delete();
+
+    // the interval has elapsed, but the directory cannot be read; keep serving the current keys.
+    assertArrayEquals(OLD_KEY, index.get("tenant").getEncoded());
+    assertArrayEquals(OLD_KEY, index.get("tenant").getEncoded());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRefreshDirectoryMissing() throws Exception
+  {
+    File directory = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    directory.delete();
+
+    new KeyIndex(directory, 0).refresh();
+  }
+
+  private static File write(File directory, String name, byte[] key) throws Exception
+  {
+    File file = new File(directory, name);
+    Files.write(file.toPath(), Base64.getEncoder().encodeToString(key).getBytes(StandardCharsets.US_ASCII));
+    return file;
+  }
+}